@@ -0,0 +1,170 @@
+package benchmarks;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import catalog.*;
+
+/**
+ * Measures the Catalog operations across catalog sizes, category cardinalities and storage modes.
+ * Lookups cycle through a fixed sample of existing IDs so every call hits.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms4g", "-Xmx8g"})
+@State(Scope.Benchmark)
+public class CatalogBenchmark {
+    // Number of existing IDs sampled for lookups, a power of two
+    private static final int SAMPLE_SIZE = 4096;
+
+    @Param({"1000", "100000", "1000000", "10000000"})
+    private int size;
+
+    @Param({"10", "1000"})
+    private int categories;
+
+    // "hash" for the default Catalog, "columnar" for a ColumnarCatalog, "offheap" for an OffHeapCatalog
+    @Param({"hash", "columnar", "offheap"})
+    private String storage;
+
+    // "on" to enable Catalog metrics; run with -p metrics=off,on to measure their overhead
+    @Param({"off"})
+    private String metrics;
+
+    private Catalog<String> catalog;
+    private CatalogCache<String> cache;
+    private ItemId[] sampleIds;
+    private String[] sampleIdStrings;
+    private String[] categoryNames;
+    private int cursor;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        categoryNames = new String[categories];
+        for (int i = 0; i < categories; i++) {
+            categoryNames[i] = "Category " + i;
+        }
+        List<LibraryItem<String>> items = new ArrayList<>(size);
+        LocalDate today = LocalDate.now();
+        for (int i = 0; i < size; i++) {
+            items.add(new LibraryItem<>(ItemIdGenerator.nextId(), "Title " + i, "Author " + (i % 10_000),
+                    categoryNames[i % categories], LocalDate.ofEpochDay(i % 40_000), today));
+        }
+        switch (storage) {
+            case "columnar":
+                catalog = new ColumnarCatalog<>(size);
+                break;
+            case "offheap":
+                catalog = new OffHeapCatalog<>();
+                break;
+            default:
+                catalog = new Catalog<>();
+        }
+        catalog.addAll(items);
+        if (metrics.equals("on")) {
+            catalog.enableMetrics();
+        }
+        cache = new CatalogCache<>(catalog, 256L * 1024 * 1024);
+
+        Random random = new Random(42);
+        sampleIds = new ItemId[SAMPLE_SIZE];
+        sampleIdStrings = new String[SAMPLE_SIZE];
+        for (int i = 0; i < SAMPLE_SIZE; i++) {
+            sampleIds[i] = items.get(random.nextInt(size)).getId();
+            sampleIdStrings[i] = sampleIds[i].toString();
+        }
+    }
+
+    private int next() {
+        return cursor++ & (SAMPLE_SIZE - 1);
+    }
+
+    @Benchmark
+    public LibraryItem<String> getItem() {
+        return catalog.getItem(sampleIds[next()]);
+    }
+
+    @Benchmark
+    public LibraryItem<String> getItemByString() {
+        return catalog.getItem(sampleIdStrings[next()]);
+    }
+
+    @Benchmark
+    public boolean hasItem() {
+        return catalog.hasItem(sampleIds[next()]);
+    }
+
+    @Benchmark
+    public boolean hasItemByString() {
+        return catalog.hasItem(sampleIdStrings[next()]);
+    }
+
+    /**
+     * Adds a new item and removes it again, keeping the catalog size steady across invocations.
+     */
+    @Benchmark
+    public LibraryItem<String> addAndRemoveItem() {
+        LibraryItem<String> item = new LibraryItem<>("Title", "Author", categoryNames[next() % categories], LocalDate.of(2000, 1, 1));
+        catalog.addItem(item);
+        catalog.removeItem(item.getId());
+        return item;
+    }
+
+    @Benchmark
+    public Set<String> getCategories() {
+        return catalog.getCategories();
+    }
+
+    @Benchmark
+    public Map<String, Integer> getCategoryCounts() {
+        return catalog.getCategoryCounts();
+    }
+
+    /**
+     * Renders one category to a discarding writer, covering the filtered view and the table renderer.
+     */
+    @Benchmark
+    public void displayCatalogByCategory() throws IOException {
+        catalog.displayCatalog(Optional.of(categoryNames[next() % categories]), Writer.nullWriter());
+    }
+
+    /**
+     * Reads the category list through a CatalogCache, which only recomputes it when a category appears or disappears.
+     */
+    @Benchmark
+    public Set<String> cachedGetCategories() {
+        return cache.getCategories();
+    }
+
+    /**
+     * Renders one category through a CatalogCache. Tables too large for the cache fall back to rendering.
+     */
+    @Benchmark
+    public void cachedDisplayCatalogByCategory() throws IOException {
+        cache.displayCatalog(Optional.of(categoryNames[next() % categories]), Writer.nullWriter());
+    }
+
+    /**
+     * Selects the first 50 items by title with a bounded heap, in parallel on large catalogs.
+     */
+    @Benchmark
+    public CatalogQuery.Page<String> queryTop50ByTitle() {
+        return catalog.query(CatalogQuery.<String>create().orderBy(CatalogQuery.SortKey.TITLE).limit(50));
+    }
+
+    /**
+     * Selects the 20 most recently added items of one category.
+     */
+    @Benchmark
+    public CatalogQuery.Page<String> queryLatest20AddedInCategory() {
+        return catalog.query(CatalogQuery.<String>create().inCategory(categoryNames[next() % categories])
+                .orderByDescending(CatalogQuery.SortKey.DATE_ADDED).limit(20));
+    }
+}
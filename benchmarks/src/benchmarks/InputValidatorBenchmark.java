@@ -0,0 +1,132 @@
+package benchmarks;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import validators.*;
+
+/**
+ * Measures the InputValidator predicates. Inputs are chosen so that every check passes,
+ * which keeps the validators from printing to stdout during the run.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InputValidatorBenchmark {
+
+    @Param({"1000", "100000"})
+    private int collectionSize;
+
+    private final String title = "The Lord of the Rings";
+    private final CharacterClassValidator lettersOnly = CharacterClassValidator.of(
+            CharacterClassValidator.LETTERS, CharacterClassValidator.DIGITS | CharacterClassValidator.SPECIAL);
+    private final DateParser slashDates = new DateParser(DateParser.DAY_FIRST_FORMATS);
+    private List<String> titles;
+    private List<String[]> records;
+    private final ValidationPipeline<String[]> pipeline = ValidationPipeline.<String[]>create()
+            .nonEmpty("title", fields -> fields[0])
+            .characters("author", fields -> fields[1], CharacterClassValidator.of(CharacterClassValidator.LETTERS, CharacterClassValidator.DIGITS))
+            .date("release date", fields -> fields[2], DateTimeFormatter.ISO_LOCAL_DATE, true, false);
+    private final List<String> batch = List.of("Title 1", "Title 2", "Title 3", "Title 4", "Title 5",
+            "Missing 1", "Missing 2", "Missing 3", "Missing 4", "Missing 5");
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        titles = new ArrayList<>(collectionSize);
+        for (int i = 0; i < collectionSize; i++) {
+            titles.add("Title " + i);
+        }
+        // One record in ten has a bad date, to include the failure path
+        records = new ArrayList<>(collectionSize);
+        for (int i = 0; i < collectionSize; i++) {
+            records.add(new String[] {"Title " + i, "Author", i % 10 == 0 ? "2001-13-11" : "2001-09-11"});
+        }
+    }
+
+    @Benchmark
+    public boolean validateNonNullAndNonEmpty() {
+        return InputValidator.validateNonNullAndNonEmpty(title);
+    }
+
+    @Benchmark
+    public boolean includeAlphabets() {
+        return InputValidator.includeAlphabets(title, true);
+    }
+
+    @Benchmark
+    public boolean includeNumbers() {
+        return InputValidator.includeNumbers(title, false);
+    }
+
+    @Benchmark
+    public boolean includeSpecialCharacters() {
+        return InputValidator.includeSpecialCharacters(title, false);
+    }
+
+    /**
+     * Checks all three character classes in one scan, for comparison with the separate predicates above.
+     */
+    @Benchmark
+    public int characterClassValidator() {
+        return lettersOnly.validate(title);
+    }
+
+    @Benchmark
+    public LocalDate validateAndParseDate() {
+        return InputValidator.validateAndParseDate("2001-09-11", DateTimeFormatter.ISO_LOCAL_DATE);
+    }
+
+    /**
+     * Parses a malformed date, which the old exception-driven path paid a DateTimeParseException for.
+     */
+    @Benchmark
+    public LocalDate tryParseInvalidDate() {
+        return InputValidator.tryParseDate("2001-13-11", DateTimeFormatter.ISO_LOCAL_DATE);
+    }
+
+    /**
+     * Validates a batch of collectionSize records on the common ForkJoinPool.
+     */
+    @Benchmark
+    public int validateAll() {
+        return pipeline.validateAll(records).getInvalidCount();
+    }
+
+    /**
+     * Parses a date through the learned fallback formats after the parser has seen the source's format.
+     */
+    @Benchmark
+    public LocalDate dateParserFallback() {
+        return slashDates.parse("11/09/2001");
+    }
+
+    @Benchmark
+    public LocalDate dateParserIso() {
+        return slashDates.parse("2001-09-11");
+    }
+
+    @Benchmark
+    public boolean validateDate() {
+        return InputValidator.validateDate("2001-09-11", true, false);
+    }
+
+    @Benchmark
+    public boolean validateUniqueness() {
+        return InputValidator.validateUniqueness("Missing title", titles, value -> value);
+    }
+
+    /**
+     * Checks a batch of ten values against the collection in one pass, for comparison with ten validateUniqueness calls.
+     */
+    @Benchmark
+    public Set<String> findNonUnique() {
+        return InputValidator.findNonUnique(batch, titles, value -> value);
+    }
+}
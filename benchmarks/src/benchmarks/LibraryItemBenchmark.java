@@ -0,0 +1,61 @@
+package benchmarks;
+
+import java.time.LocalDate;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.*;
+
+import catalog.*;
+
+/**
+ * Measures item construction and ID generation, with the UUID string IDs items used before as a baseline.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LibraryItemBenchmark {
+    private final LocalDate releaseDate = LocalDate.of(1999, 12, 31);
+    private final ItemId id = ItemIdGenerator.nextId();
+    private final String idString = id.toString();
+
+    @Benchmark
+    public LibraryItem<String> newLibraryItem() {
+        return new LibraryItem<>("Title", "Author", "Books", releaseDate);
+    }
+
+    @Benchmark
+    public ItemId nextItemId() {
+        return ItemIdGenerator.nextId();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public ItemId nextItemIdContended() {
+        return ItemIdGenerator.nextId();
+    }
+
+    @Benchmark
+    public String randomUuidString() {
+        return UUID.randomUUID().toString();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public String randomUuidStringContended() {
+        return UUID.randomUUID().toString();
+    }
+
+    @Benchmark
+    public String formatItemId() {
+        return id.toString();
+    }
+
+    @Benchmark
+    public ItemId parseItemId() {
+        return ItemId.parse(idString);
+    }
+}
@@ -0,0 +1,132 @@
+package benchmarks;
+
+import java.io.*;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+import catalog.LatencyHistogram;
+
+/**
+ * Drives a running CatalogServer from several client connections and reports throughput and latency percentiles.
+ *
+ * Each client first adds its own items, then sends pipelined batches of requests for the given duration:
+ * 80% get of a known ID, 9% add, 9% remove of one of its own items and 2% list of a category. A request's
+ * latency runs from sending its batch to reading its response, so it includes the time spent queued behind
+ * the rest of the batch.
+ *
+ * Usage: java -cp target/benchmarks.jar benchmarks.LoadGenerator [host] [port] [clients] [seconds] [pipeline depth]
+ */
+public class LoadGenerator {
+    // Items each client adds before the measurement starts
+    private static final int ITEMS_PER_CLIENT = 1000;
+    // Number of categories the items are spread over
+    private static final int CATEGORIES = 50;
+
+    public static void main(String[] args) throws Exception {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 7070;
+        int clients = args.length > 2 ? Integer.parseInt(args[2]) : 8;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 10;
+        int depth = args.length > 4 ? Integer.parseInt(args[4]) : 16;
+
+        LatencyHistogram latency = new LatencyHistogram();
+        LongAdder errors = new LongAdder();
+        ExecutorService pool = Executors.newFixedThreadPool(clients);
+        CountDownLatch seeded = new CountDownLatch(clients);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Long>> results = new ArrayList<>();
+        long[] window = new long[2];
+        for (int c = 0; c < clients; c++) {
+            int client = c;
+            results.add(pool.submit(() -> runClient(host, port, client, depth, seeded, start, window, latency, errors)));
+        }
+        seeded.await();
+        window[0] = System.nanoTime();
+        window[1] = window[0] + TimeUnit.SECONDS.toNanos(seconds);
+        start.countDown();
+        long requests = 0;
+        for (Future<Long> result : results) {
+            requests += result.get();
+        }
+        double elapsed = (System.nanoTime() - window[0]) / 1_000_000_000.0;
+        pool.shutdown();
+
+        System.out.printf("%d clients, pipeline depth %d, %d requests in %.1f s: %.0f requests/sec, %d errors%n",
+                clients, depth, requests, elapsed, requests / elapsed, errors.sum());
+        System.out.printf("latency us: mean %.1f, p50 %.1f, p99 %.1f, p99.9 %.1f, max %.1f%n",
+                latency.getMean() / 1000, latency.getValueAtPercentile(50) / 1000.0, latency.getValueAtPercentile(99) / 1000.0,
+                latency.getValueAtPercentile(99.9) / 1000.0, latency.getMax() / 1000.0);
+    }
+
+    /**
+     * Seeds one client's items, waits for every client to be ready, then sends batches until the window closes.
+     * @return The number of requests answered in the window.
+     */
+    private static long runClient(String host, int port, int client, int depth, CountDownLatch seeded, CountDownLatch start,
+                                  long[] window, LatencyHistogram latency, LongAdder errors) throws Exception {
+        try (Socket socket = new Socket(host, port)) {
+            socket.setTcpNoDelay(true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8), 64 * 1024);
+            Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), 64 * 1024);
+            Random random = new Random(client);
+            List<String> ids = new ArrayList<>();
+            for (int i = 0; i < ITEMS_PER_CLIENT; i++) {
+                out.write(addRequest(client, i));
+            }
+            out.flush();
+            for (int i = 0; i < ITEMS_PER_CLIENT; i++) {
+                ids.add(in.readLine().substring(3));
+            }
+            seeded.countDown();
+            start.await();
+
+            // Kind of each request in the batch: 0 get, 1 add, 2 remove, 3 list
+            int[] kinds = new int[depth];
+            long requests = 0;
+            int next = ITEMS_PER_CLIENT;
+            while (System.nanoTime() < window[1]) {
+                for (int i = 0; i < depth; i++) {
+                    int roll = random.nextInt(100);
+                    // Keep at least one item to get; a remove with nothing left to remove becomes an add
+                    if (roll >= 89 && roll < 98 && ids.size() > 1) {
+                        kinds[i] = 2;
+                        out.write("remove\t" + ids.remove(ids.size() - 1) + "\n");
+                    } else if (roll < 80) {
+                        kinds[i] = 0;
+                        out.write("get\t" + ids.get(random.nextInt(ids.size())) + "\n");
+                    } else if (roll < 98) {
+                        kinds[i] = 1;
+                        out.write(addRequest(client, next++));
+                    } else {
+                        kinds[i] = 3;
+                        out.write("list\tCategory " + random.nextInt(CATEGORIES) + "\n");
+                    }
+                }
+                long sent = System.nanoTime();
+                out.flush();
+                for (int i = 0; i < depth; i++) {
+                    String response = in.readLine();
+                    if (kinds[i] == 3) {
+                        while (!response.startsWith("end\t")) {
+                            response = in.readLine();
+                        }
+                    } else if (response.startsWith("error")) {
+                        errors.increment();
+                    } else if (kinds[i] == 1) {
+                        ids.add(response.substring(3));
+                    }
+                    latency.record(System.nanoTime() - sent);
+                }
+                requests += depth;
+            }
+            return requests;
+        }
+    }
+
+    private static String addRequest(int client, int i) {
+        return "add\tTitle " + client + "-" + i + "\tAuthor " + (i % 100) + "\tCategory " + (i % CATEGORIES) + "\t2000-01-01\n";
+    }
+}
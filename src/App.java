@@ -1,24 +1,91 @@
+import java.io.*;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import javax.management.JMException;
+import java.nio.file.*;
 import java.util.*;
 import java.time.*;
 import java.time.format.DateTimeFormatter;
 
-// Import validators package
+// Import catalog and validators packages
+import catalog.*;
 import validators.*;
 
 public class App {
     // Catalog to store library items, with String as the type for category handling
-    private static Catalog<String> catalog = new Catalog<>();
+    private static Catalog<String> catalog;
+    // Full-text index over the titles and authors in the catalog
+    private static final SearchIndex<String> searchIndex = new SearchIndex<>();
+    // Cache of the category list and rendered tables, so showing the same category again skips re-rendering it
+    private static CatalogCache<String> cache;
     // Scanner object for reading user input
     private static final Scanner scanner = new Scanner(System.in);
     // Formatter for parsing dates in the format YYYY-MM-DD
     private static final DateTimeFormatter formatter = DateTimeFormatter.ISO_LOCAL_DATE;
+    // Snapshot file the catalog is loaded from and saved to, if given with --data
+    private static Path dataFile;
+    // Write-ahead log of changes made since the snapshot was saved, kept next to the snapshot file
+    private static CatalogWal<String> wal;
+    // Log size at which it is folded into the snapshot
+    private static final long WAL_COMPACTION_THRESHOLD = 64L * 1024 * 1024;
 
     public static void main(String[] args) {
+        // With --serve <port>, check the port before anything is loaded, so a bad one is reported straight away
+        int serveIndex = Arrays.asList(args).indexOf("--serve");
+        int port = serveIndex >= 0 && serveIndex + 1 < args.length ? parsePort(args[serveIndex + 1]) : -1;
+        if (serveIndex >= 0 && port < 0) {
+            System.out.println("Usage: --serve <port>, where the port is a number from 0 to 65535.");
+            return;
+        }
+        // A server shares the catalog between connection threads, which needs the concurrent implementation
+        catalog = serveIndex >= 0 ? new ConcurrentCatalog<>() : new Catalog<>();
+        cache = new CatalogCache<>(catalog, 64L * 1024 * 1024, CatalogCache.Policy.TINY_LFU);
+        // Attach the search index first so it sees every item loaded below
+        searchIndex.attach(catalog);
+        // With --metrics, count and time catalog operations, publish them over JMX and print them on exit
+        boolean metrics = Arrays.asList(args).contains("--metrics");
+        if (metrics) {
+            enableMetrics();
+        }
+
+        // Restore the catalog given as --data <file>, then load any files given as --import <file>
+        for (int i = 0; i + 1 < args.length; i++) {
+            if (args[i].equals("--data")) {
+                dataFile = Paths.get(args[++i]);
+                openDataFile();
+            }
+        }
+        // Slash-separated dates in imported files are day first, or month first with --month-first
+        DateTimeFormatter[] importFormats = Arrays.asList(args).contains("--month-first")
+                ? DateParser.MONTH_FIRST_FORMATS : DateParser.DAY_FIRST_FORMATS;
+        for (int i = 0; i + 1 < args.length; i++) {
+            if (args[i].equals("--import")) {
+                importFile(args[++i], importFormats);
+            }
+        }
+        // With --serve <port>, serve the catalog to local clients until the process is stopped
+        if (serveIndex >= 0) {
+            serve(port, metrics);
+            return;
+        }
+        // With --batch <file>, or --batch - for standard input, run the commands headless instead of showing the menu
+        for (int i = 0; i + 1 < args.length; i++) {
+            if (args[i].equals("--batch")) {
+                runBatch(args[i + 1]);
+                closeDataFile();
+                if (metrics) {
+                    System.err.print(catalog.getMetrics());
+                }
+                return;
+            }
+        }
+
         boolean exit = false;
 
         // Main loop to handle user actions
         while (!exit) {
-            System.out.println("Choose an action: (1) Add Item, (2) Remove Item, (3) Display Catalog, (4) Exit");
+            System.out.println("Choose an action: (1) Add Item, (2) Remove Item, (3) Display Catalog, (4) Exit, (5) Search Catalog");
             int choice = scanner.nextInt();
             scanner.nextLine();  // Consume newline left-over
 
@@ -36,14 +103,79 @@ public class App {
                 case 4:
                     exit = true;
                     break;
+                case 5:
+                    searchCatalog();
+                    break;
                 default:
                     System.out.println("Invalid choice.");
                     break;
             }
         }
+        closeDataFile();
+        if (metrics) {
+            System.out.print(catalog.getMetrics());
+        }
         scanner.close();
     }
 
+    /**
+     * Parses the port given with --serve.
+     * @param text The port argument.
+     * @return The port, or -1 if the argument is not a number from 0 to 65535.
+     */
+    private static int parsePort(String text) {
+        try {
+            int port = Integer.parseInt(text);
+            return port >= 0 && port <= 65535 ? port : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Restores the catalog from the snapshot file and its write-ahead log, then starts logging changes.
+     */
+    private static void openDataFile() {
+        CategoryCodec<String> codec = CategoryCodec.utf8();
+        try {
+            long start = System.nanoTime();
+            int loaded = Files.exists(dataFile) ? new CatalogSnapshot<>(codec).load(dataFile, catalog) : 0;
+            wal = new CatalogWal<>(Paths.get(dataFile + ".wal"), codec, Duration.ofMillis(2), dataFile, WAL_COMPACTION_THRESHOLD);
+            int replayed = wal.attach(catalog);
+            System.out.printf("Loaded %d items and replayed %d changes from %s in %.1f ms%n",
+                              loaded, replayed, dataFile, (System.nanoTime() - start) / 1_000_000.0);
+        } catch (IOException e) {
+            System.out.println("Could not load " + dataFile + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Starts collecting catalog metrics and registers them as an MBean for JMX clients such as jconsole.
+     */
+    private static void enableMetrics() {
+        CatalogMetrics catalogMetrics = catalog.enableMetrics();
+        try {
+            catalogMetrics.registerMBean("catalog:type=CatalogMetrics,name=App");
+        } catch (JMException e) {
+            System.out.println("Could not publish metrics over JMX: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Folds the write-ahead log into the snapshot file and closes it.
+     */
+    private static void closeDataFile() {
+        if (wal == null) {
+            return;
+        }
+        try {
+            wal.compact();
+            wal.close();
+        } catch (IOException e) {
+            System.out.println("Could not save " + dataFile + ": " + e.getMessage());
+        }
+    }
+
     /**
      * Adds a new item to the catalog by collecting details from the user.
      */
@@ -68,13 +200,88 @@ public class App {
         catalog.addItem(newItem);
     }
 
+    /**
+     * Bulk-loads items from a CSV or JSON Lines file into the catalog and reports the result.
+     * @param fileName The path of the file to import.
+     * @param formats The date formats accepted, one of the DateParser common format sets.
+     */
+    private static void importFile(String fileName, DateTimeFormatter[] formats) {
+        // Files from other tools may use other date formats; YYYY-MM-DD is still parsed first
+        CatalogImporter<String> importer = new CatalogImporter<>(category -> category, formats);
+        try {
+            CatalogImporter.ImportResult result = importer.importFile(Paths.get(fileName), catalog);
+            System.out.println(result);
+            result.getRejections().forEach(System.out::println);
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println("Could not import " + fileName + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Runs catalog commands from a file or standard input, writing machine-readable results to standard output.
+     * The summary goes to standard error so the results can be piped on unchanged.
+     * @param source The path of the command file, or - for standard input.
+     */
+    private static void runBatch(String source) {
+        CommandProcessor<String> processor = new CommandProcessor<>(catalog, category -> category, searchIndex);
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 64 * 1024);
+        try (BufferedReader in = source.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8), 64 * 1024)
+                : Files.newBufferedReader(Paths.get(source), StandardCharsets.UTF_8)) {
+            System.err.println(processor.run(in, out));
+        } catch (IOException e) {
+            System.err.println("Could not run " + source + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * Serves the catalog on a loopback port with a CatalogServer, until the process is stopped.
+     * On shutdown the server is closed, the data file saved and, if enabled, the metrics printed.
+     * @param port The port to listen on.
+     * @param metrics true if metrics are enabled.
+     */
+    private static void serve(int port, boolean metrics) {
+        CatalogServer<String> server = new CatalogServer<>(catalog, category -> category, searchIndex);
+        try {
+            server.start(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        } catch (IOException e) {
+            System.out.println("Could not listen on port " + port + ": " + e.getMessage());
+            return;
+        }
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+            } catch (IOException e) {
+                System.out.println("Could not close server: " + e.getMessage());
+            }
+            closeDataFile();
+            if (metrics) {
+                System.out.print(catalog.getMetrics());
+            }
+        }));
+        System.out.println("Serving the catalog on " + InetAddress.getLoopbackAddress().getHostAddress() + ":" + server.getPort());
+        try {
+            server.awaitTermination();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
     /**
      * Removes an item from the catalog by collecting the item ID from the user.
      */
     private static void removeItem() {
-        String removeID = InputValidator.getInput(scanner, "Enter item ID to remove:",
-                                                  input -> InputValidator.validateNonNullAndNonEmpty(input) && catalog.hasItem(input),
-                                                  "Item ID does not exist or is invalid. Please enter a valid ID.");
+        // Parse the ID once here so the catalog is only ever queried by its compact form
+        ItemId removeID = InputValidator.getParsedInput(scanner, "Enter item ID to remove:",
+                                                        input -> {
+                                                            ItemId id = ItemId.parse(input.trim());
+                                                            if (catalog.hasItem(id)) {
+                                                                return id;
+                                                            } else {
+                                                                throw new IllegalArgumentException("Item ID does not exist");
+                                                            }
+                                                        },
+                                                        "Item ID does not exist or is invalid. Please enter a valid ID.");
         catalog.removeItem(removeID);
         System.out.println("Item removed successfully.");
     }
@@ -89,7 +296,38 @@ public class App {
         if (response.equalsIgnoreCase("yes")) {
             displayCategories();
         } else {
-            catalog.displayCatalog(Optional.empty());
+            displayTable(Optional.empty());
+        }
+    }
+
+    /**
+     * Displays the catalog items through the cache, optionally filtered by category.
+     * @param category An Optional containing the category to filter by. If empty, all items are displayed.
+     */
+    private static void displayTable(Optional<String> category) {
+        try {
+            cache.displayCatalog(category, System.out);
+        } catch (IOException e) {
+            System.out.println("Could not display catalog: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Searches titles and authors for the words entered by the user and displays the matching items.
+     */
+    private static void searchCatalog() {
+        String query = InputValidator.getInput(scanner, "Enter search words (end a word with * to match it as a prefix):",
+                                               InputValidator::validateNonNullAndNonEmpty,
+                                               "Search must not be empty.");
+        List<LibraryItem<String>> results = searchIndex.search(query);
+        if (results.isEmpty()) {
+            System.out.println("No matching items.");
+        } else {
+            try {
+                new CatalogRenderer().render(results, (Appendable) System.out);
+            } catch (IOException e) {
+                System.out.println("Could not display results: " + e.getMessage());
+            }
         }
     }
 
@@ -112,7 +350,7 @@ public class App {
                                                                    }
                                                                },
                                                                "Invalid category number. Please enter a valid number.");
-            catalog.displayCatalog(Optional.of(categoryMap.get(categoryChoice)));
+            displayTable(Optional.of(categoryMap.get(categoryChoice)));
         } else {
             System.out.println("No categories available.");
         }
@@ -123,7 +361,7 @@ public class App {
      * @return A map of category indices to category names.
      */
     private static Map<Integer, String> listCategories() {
-        Set<String> categories = catalog.getCategories();
+        Set<String> categories = cache.getCategories();
         int index = 1;
         Map<Integer, String> categoryMap = new HashMap<>();
         for (String category : categories) {
@@ -0,0 +1,646 @@
+package catalog;
+
+import java.io.*;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.locks.ReentrantLock;
+
+import catalog.CatalogMetrics.Operation;
+
+public class Catalog<T> {
+    // Number of write locks a concurrent catalog stripes its item IDs over; a power of two
+    private static final int WRITE_LOCK_STRIPES = 256;
+
+    // A map to store library items, with the item ID as the key and the LibraryItem as the value
+    private final Map<ItemId, LibraryItem<T>> itemsCatalog;
+    // Secondary index grouping the same items by category, kept in step with itemsCatalog
+    private final Map<T, Map<ItemId, LibraryItem<T>>> categoryIndex;
+    // Listeners notified after every change to the catalog
+    private final List<CatalogListener<T>> listeners = new CopyOnWriteArrayList<>();
+    // Journal recording every change before it is applied, or null if there is none
+    private volatile CatalogJournal<T> journal;
+    // Counts and latencies of the public operations, or null while metrics are disabled
+    private volatile CatalogMetrics metrics;
+    // true if several threads may change the catalog at once; empty category buckets are then kept,
+    // since another writer may be adding to the bucket while it is being dropped
+    private final boolean concurrent;
+    // Locks held while an item is changed and the change journaled and notified, striped by item ID so each
+    // item's changes reach the journal and listeners in the order they are applied; null unless concurrent
+    private final ReentrantLock[] writeLocks;
+
+    /**
+     * Creates an empty catalog backed by hash maps, with items keyed by the primitive bits of their IDs.
+     */
+    public Catalog() {
+        this(new ItemIdMap<>(), new HashMap<>());
+    }
+
+    /**
+     * Creates an empty catalog over the given backing maps, for subclasses that need other map implementations.
+     * @param itemsCatalog The map of item IDs to items.
+     * @param categoryIndex The map of categories to the items in each category.
+     */
+    protected Catalog(Map<ItemId, LibraryItem<T>> itemsCatalog, Map<T, Map<ItemId, LibraryItem<T>>> categoryIndex) {
+        this(itemsCatalog, categoryIndex, false);
+    }
+
+    /**
+     * Creates an empty catalog over the given backing maps, which may be concurrent.
+     * @param itemsCatalog The map of item IDs to items.
+     * @param categoryIndex The map of categories to the items in each category.
+     * @param concurrent true if the maps are concurrent and several threads may change the catalog at once.
+     */
+    protected Catalog(Map<ItemId, LibraryItem<T>> itemsCatalog, Map<T, Map<ItemId, LibraryItem<T>>> categoryIndex,
+                      boolean concurrent) {
+        this.itemsCatalog = itemsCatalog;
+        this.categoryIndex = categoryIndex;
+        this.concurrent = concurrent;
+        if (concurrent) {
+            writeLocks = new ReentrantLock[WRITE_LOCK_STRIPES];
+            for (int i = 0; i < writeLocks.length; i++) {
+                writeLocks[i] = new ReentrantLock();
+            }
+        } else {
+            writeLocks = null;
+        }
+    }
+
+    /**
+     * Adds a new item to the catalog.
+     * @param item The LibraryItem to be added.
+     */
+    public void addItem(LibraryItem<T> item) {
+        long start = startTiming();
+        ReentrantLock lock = writeLock(item.getId());
+        lock(lock);
+        try {
+            CatalogJournal<T> current = journal;
+            if (current != null) {
+                current.beforeAdd(Collections.singletonList(item));
+            }
+            LibraryItem<T> previous = putItem(item);
+            for (CatalogListener<T> listener : listeners) {
+                if (previous != null) {
+                    listener.itemRemoved(previous);
+                }
+                listener.itemAdded(item);
+            }
+        } finally {
+            unlock(lock);
+        }
+        changeApplied();
+        record(Operation.ADD_ITEM, start);
+    }
+
+    /**
+     * Adds a batch of items to the catalog, sizing the item map once for the whole batch.
+     * @param items The LibraryItems to be added.
+     */
+    public void addAll(Collection<LibraryItem<T>> items) {
+        long start = startTiming();
+        if (itemsCatalog instanceof ItemIdMap) {
+            ((ItemIdMap<LibraryItem<T>>) itemsCatalog).ensureCapacity(itemsCatalog.size() + items.size());
+        } else if (itemsCatalog instanceof ScannableStore) {
+            ((ScannableStore<T>) itemsCatalog).ensureCapacity(itemsCatalog.size() + items.size());
+        }
+        boolean[] stripes = lockAll(items);
+        try {
+            CatalogJournal<T> current = journal;
+            if (current != null) {
+                current.beforeAdd(items);
+            }
+            List<LibraryItem<T>> replaced = new ArrayList<>();
+            // Batch position of the item that replaced each one, in step with replaced
+            List<Integer> replacedAt = new ArrayList<>();
+            int position = 0;
+            for (LibraryItem<T> item : items) {
+                LibraryItem<T> previous = putItem(item);
+                if (previous != null) {
+                    replaced.add(previous);
+                    replacedAt.add(position);
+                }
+                position++;
+            }
+            Collection<LibraryItem<T>> added = replaced.isEmpty() ? items : collapseDuplicates(items, replaced, replacedAt);
+            for (CatalogListener<T> listener : listeners) {
+                replaced.forEach(listener::itemRemoved);
+                listener.itemsAdded(added);
+            }
+        } finally {
+            unlockAll(stripes);
+        }
+        changeApplied();
+        record(Operation.ADD_ALL, start);
+    }
+
+    /**
+     * Removes an item from the catalog.
+     * @param itemID The ID of the item to be removed.
+     * @throws IllegalArgumentException if the item ID does not exist in the catalog.
+     */
+    public void removeItem(ItemId itemID) {
+        long start = startTiming();
+        ReentrantLock lock = writeLock(itemID);
+        lock(lock);
+        try {
+            LibraryItem<T> item = itemsCatalog.get(itemID);
+            if (item == null) {
+                throw new IllegalArgumentException("Item with ID " + itemID + " does not exist.");
+            }
+            CatalogJournal<T> current = journal;
+            if (current != null) {
+                current.beforeRemove(item);
+            }
+            itemsCatalog.remove(itemID);
+            unindexItem(item);
+            for (CatalogListener<T> listener : listeners) {
+                listener.itemRemoved(item);
+            }
+        } finally {
+            unlock(lock);
+        }
+        changeApplied();
+        record(Operation.REMOVE_ITEM, start);
+    }
+
+    /**
+     * Removes an item from the catalog by the text form of its ID.
+     * @param itemID The ID of the item to be removed.
+     * @throws IllegalArgumentException if the item ID is invalid or does not exist in the catalog.
+     */
+    public void removeItem(String itemID) {
+        ItemId id = ItemId.tryParse(itemID);
+        if (id == null) {
+            throw new IllegalArgumentException("Item with ID " + itemID + " does not exist.");
+        }
+        removeItem(id);
+    }
+
+    /**
+     * Retrieves an item from the catalog.
+     * @param itemID The ID of the item to retrieve.
+     * @return The LibraryItem with the specified ID, or null if it does not exist.
+     */
+    public LibraryItem<T> getItem(ItemId itemID) {
+        long start = startTiming();
+        LibraryItem<T> item = itemsCatalog.get(itemID);
+        record(Operation.GET_ITEM, start);
+        return item;
+    }
+
+    /**
+     * Retrieves an item from the catalog by the text form of its ID.
+     * @param itemID The ID of the item to retrieve.
+     * @return The LibraryItem with the specified ID, or null if the ID is invalid or does not exist.
+     */
+    public LibraryItem<T> getItem(String itemID) {
+        long start = startTiming();
+        ItemId id = ItemId.tryParse(itemID);
+        LibraryItem<T> item = id == null ? null : itemsCatalog.get(id);
+        record(Operation.GET_ITEM, start);
+        return item;
+    }
+
+    /**
+     * Retrieves all items in the catalog.
+     * @return An unmodifiable view of the items in the catalog.
+     */
+    public Collection<LibraryItem<T>> getItems() {
+        record(Operation.GET_ITEMS, CatalogMetrics.NOT_TIMED);
+        return Collections.unmodifiableCollection(itemsCatalog.values());
+    }
+
+    /**
+     * Retrieves all unique categories of items in the catalog.
+     * @return A set of categories present in the catalog.
+     */
+    public Set<T> getCategories() {
+        long start = startTiming();
+        Set<T> categories = new HashSet<>();
+        categoryIndex.forEach((category, items) -> {
+            if (!items.isEmpty()) {
+                categories.add(category);
+            }
+        });
+        record(Operation.GET_CATEGORIES, start);
+        return categories;
+    }
+
+    /**
+     * Retrieves the number of items in each category.
+     * @return A map of each category present in the catalog to its item count.
+     */
+    public Map<T, Integer> getCategoryCounts() {
+        record(Operation.GET_CATEGORY_COUNTS, CatalogMetrics.NOT_TIMED);
+        Map<T, Integer> counts = new HashMap<>();
+        categoryIndex.forEach((category, items) -> {
+            if (!items.isEmpty()) {
+                counts.put(category, items.size());
+            }
+        });
+        return counts;
+    }
+
+    /**
+     * Retrieves all items in a specific category.
+     * @param category The category to look up.
+     * @return An unmodifiable view of the items in the category, empty if the category is not present.
+     */
+    public Collection<LibraryItem<T>> getItemsByCategory(T category) {
+        record(Operation.GET_ITEMS_BY_CATEGORY, CatalogMetrics.NOT_TIMED);
+        Map<ItemId, LibraryItem<T>> items = categoryIndex.get(category);
+        return items == null ? Collections.emptyList() : Collections.unmodifiableCollection(items.values());
+    }
+
+    /**
+     * Gets the number of items in the catalog.
+     * @return The number of items.
+     */
+    public int size() {
+        return itemsCatalog.size();
+    }
+
+    /**
+     * Checks if there are any items in the catalog.
+     * @return true if the catalog is not empty, false otherwise.
+     */
+    public boolean hasItems() {
+        return !itemsCatalog.isEmpty();
+    }
+
+    /**
+     * Checks if a specific item exists in the catalog.
+     * @param itemID The ID of the item to check.
+     * @return true if the item exists in the catalog, false otherwise.
+     */
+    public boolean hasItem(ItemId itemID) {
+        record(Operation.HAS_ITEM, CatalogMetrics.NOT_TIMED);
+        return itemsCatalog.containsKey(itemID);
+    }
+
+    /**
+     * Checks if a specific item exists in the catalog by the text form of its ID.
+     * @param itemID The ID of the item to check.
+     * @return true if the ID is valid and the item exists in the catalog, false otherwise.
+     */
+    public boolean hasItem(String itemID) {
+        record(Operation.HAS_ITEM, CatalogMetrics.NOT_TIMED);
+        ItemId id = ItemId.tryParse(itemID);
+        return id != null && itemsCatalog.containsKey(id);
+    }
+
+    /**
+     * Displays the catalog items, optionally filtered by category.
+     * @param category An Optional containing the category to filter by. If empty, all items are displayed.
+     */
+    public void displayCatalog(Optional<T> category) {
+        try {
+            displayCatalog(category, System.out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the catalog items as a table to the given output, optionally filtered by category.
+     * @param category An Optional containing the category to filter by. If empty, all items are written.
+     * @param out The destination of the table.
+     * @throws IOException if writing to the destination fails.
+     */
+    public void displayCatalog(Optional<T> category, Appendable out) throws IOException {
+        long start = startTiming();
+        new CatalogRenderer().render(itemsFor(category), out);
+        record(Operation.DISPLAY_CATALOG, start);
+    }
+
+    /**
+     * Writes one page of the catalog items as a table to the given output, optionally filtered by category.
+     * Items before the page are skipped without being rendered and items after it are never visited.
+     * @param category An Optional containing the category to filter by. If empty, all items are paged through.
+     * @param offset The number of items to skip.
+     * @param limit The maximum number of items to write.
+     * @param out The destination of the table.
+     * @return The number of items written.
+     * @throws IOException if writing to the destination fails.
+     */
+    public long displayCatalogPage(Optional<T> category, long offset, long limit, Appendable out) throws IOException {
+        long start = startTiming();
+        long rows = new CatalogRenderer().renderPage(itemsFor(category).iterator(), offset, limit, out);
+        record(Operation.DISPLAY_CATALOG_PAGE, start);
+        return rows;
+    }
+
+    /**
+     * Runs a query, returning one page of the matching items in the query's order.
+     * Only the best offset + limit matches are kept while scanning, and large catalogs are scanned in parallel.
+     * @param query The filters, order and page to select.
+     * @return The page of results, with a cursor to the next page.
+     */
+    public CatalogQuery.Page<T> query(CatalogQuery<T> query) {
+        long start = startTiming();
+        CatalogQuery.Page<T> page = query.run(itemsFor(query.getCategory()));
+        record(Operation.QUERY, start);
+        return page;
+    }
+
+    /**
+     * Selects the items to display, using the category index when filtering so only matching items are visited.
+     * @param category An Optional containing the category to filter by.
+     * @return The items in the category, or all items if no category is given.
+     */
+    private Collection<LibraryItem<T>> itemsFor(Optional<T> category) {
+        if (category.isPresent()) {
+            Map<ItemId, LibraryItem<T>> items = categoryIndex.get(category.get());
+            return items == null ? Collections.emptyList() : Collections.unmodifiableCollection(items.values());
+        }
+        return Collections.unmodifiableCollection(itemsCatalog.values());
+    }
+
+    /**
+     * Registers a listener to be notified after every change to the catalog.
+     * @param listener The listener to add.
+     */
+    public void addListener(CatalogListener<T> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Unregisters a listener.
+     * @param listener The listener to remove.
+     */
+    public void removeListener(CatalogListener<T> listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Sets the journal that records every change before it is applied, replacing any journal set before.
+     * @param journal The journal, or null to stop journaling.
+     */
+    public void setJournal(CatalogJournal<T> journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Gets the journal recording the catalog's changes.
+     * @return The journal, or null if there is none.
+     */
+    public CatalogJournal<T> getJournal() {
+        return journal;
+    }
+
+    /**
+     * Starts collecting counts and latencies for the public operations, if not already collecting.
+     * @return The catalog's metrics.
+     */
+    public synchronized CatalogMetrics enableMetrics() {
+        if (metrics == null) {
+            metrics = new CatalogMetrics(this);
+        }
+        return metrics;
+    }
+
+    /**
+     * Stops collecting metrics. The metrics collected so far stay readable from the object enableMetrics returned.
+     */
+    public synchronized void disableMetrics() {
+        metrics = null;
+    }
+
+    /**
+     * Gets the metrics being collected.
+     * @return The catalog's metrics, or null if they are disabled.
+     */
+    public CatalogMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Gets the number of categories without copying them.
+     * @return The number of categories present in the catalog.
+     */
+    int categoryCount() {
+        if (!concurrent) {
+            return categoryIndex.size();
+        }
+        int count = 0;
+        for (Map<ItemId, LibraryItem<T>> items : categoryIndex.values()) {
+            if (!items.isEmpty()) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Blocks every writer by taking all write locks, waiting for changes in progress to finish,
+     * so the items can be read as a consistent whole. Does nothing unless the catalog is concurrent.
+     * Must not be called by a thread changing the catalog, such as from a listener or the journal.
+     */
+    void lockAllWrites() {
+        if (writeLocks != null) {
+            for (ReentrantLock lock : writeLocks) {
+                lock.lock();
+            }
+        }
+    }
+
+    /**
+     * Releases the write locks taken by lockAllWrites.
+     */
+    void unlockAllWrites() {
+        if (writeLocks != null) {
+            for (int i = writeLocks.length - 1; i >= 0; i--) {
+                writeLocks[i].unlock();
+            }
+        }
+    }
+
+    /**
+     * Finds the write lock of an item.
+     * @param itemID The item ID.
+     * @return The lock of the ID's stripe, or null unless the catalog is concurrent.
+     */
+    private ReentrantLock writeLock(ItemId itemID) {
+        return writeLocks == null ? null : writeLocks[itemID.hashCode() & (writeLocks.length - 1)];
+    }
+
+    private static void lock(ReentrantLock lock) {
+        if (lock != null) {
+            lock.lock();
+        }
+    }
+
+    private static void unlock(ReentrantLock lock) {
+        if (lock != null) {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes the write locks of a batch of items, in stripe order so that batches cannot deadlock each other.
+     * @param items The items about to be changed.
+     * @return The stripes locked, or null unless the catalog is concurrent.
+     */
+    private boolean[] lockAll(Collection<LibraryItem<T>> items) {
+        if (writeLocks == null) {
+            return null;
+        }
+        boolean[] stripes = new boolean[writeLocks.length];
+        for (LibraryItem<T> item : items) {
+            stripes[item.getId().hashCode() & (writeLocks.length - 1)] = true;
+        }
+        for (int i = 0; i < stripes.length; i++) {
+            if (stripes[i]) {
+                writeLocks[i].lock();
+            }
+        }
+        return stripes;
+    }
+
+    /**
+     * Releases the write locks taken by lockAll.
+     * @param stripes The stripes lockAll returned.
+     */
+    private void unlockAll(boolean[] stripes) {
+        if (stripes != null) {
+            for (int i = stripes.length - 1; i >= 0; i--) {
+                if (stripes[i]) {
+                    writeLocks[i].unlock();
+                }
+            }
+        }
+    }
+
+    /**
+     * Tells the journal a change has been applied, once the write locks are released.
+     */
+    private void changeApplied() {
+        CatalogJournal<T> current = journal;
+        if (current != null) {
+            current.changeApplied();
+        }
+    }
+
+    /**
+     * Reads the clock at the start of a timed operation, only while metrics are enabled.
+     * @return The System.nanoTime, or CatalogMetrics.NOT_TIMED if metrics are disabled.
+     */
+    private long startTiming() {
+        return metrics == null ? CatalogMetrics.NOT_TIMED : System.nanoTime();
+    }
+
+    /**
+     * Records a completed operation if metrics are enabled.
+     * @param operation The operation.
+     * @param start The value startTiming returned, or CatalogMetrics.NOT_TIMED for operations that are only counted.
+     */
+    private void record(Operation operation, long start) {
+        CatalogMetrics current = metrics;
+        if (current != null) {
+            current.record(operation, start);
+        }
+    }
+
+    /**
+     * Stores an item and updates the category index without notifying listeners.
+     * @param item The LibraryItem to store.
+     * @return The item previously stored with the same ID, or null if there was none.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private LibraryItem<T> putItem(LibraryItem<T> item) {
+        LibraryItem<T>[] replaced = new LibraryItem[1];
+        // compute keeps the item map and category index in step for a given ID
+        itemsCatalog.compute(item.getId(), (itemID, previous) -> {
+            if (previous != null) {
+                unindexItem(previous);
+                replaced[0] = previous;
+            }
+            indexItem(item);
+            return item;
+        });
+        return replaced[0];
+    }
+
+    /**
+     * Hides the IDs a batch gave more than once from listeners. The earlier copies were replaced within the
+     * batch and never seen, so listeners are told only of the item each ID held before the batch being
+     * removed, and of its last copy being added.
+     * @param items The batch, in order.
+     * @param replaced The items the batch replaced, in order; earlier copies from the batch are taken out.
+     * @param replacedAt The batch position of the item that replaced each one.
+     * @return The items to report as added, which is the batch itself if no ID was given twice.
+     */
+    private static <T> Collection<LibraryItem<T>> collapseDuplicates(Collection<LibraryItem<T>> items,
+                                                                     List<LibraryItem<T>> replaced, List<Integer> replacedAt) {
+        // First and last batch position of each ID that replaced an item; only these IDs can be duplicates
+        Map<ItemId, int[]> positions = new HashMap<>();
+        for (LibraryItem<T> item : replaced) {
+            positions.put(item.getId(), new int[] {-1, -1});
+        }
+        boolean duplicates = false;
+        int position = 0;
+        for (LibraryItem<T> item : items) {
+            int[] range = positions.get(item.getId());
+            if (range != null) {
+                duplicates |= range[0] >= 0;
+                if (range[0] < 0) {
+                    range[0] = position;
+                }
+                range[1] = position;
+            }
+            position++;
+        }
+        if (!duplicates) {
+            return items;
+        }
+        // An item replaced after its ID's first position was an earlier copy from the batch
+        for (int i = replaced.size() - 1; i >= 0; i--) {
+            if (positions.get(replaced.get(i).getId())[0] != replacedAt.get(i)) {
+                replaced.remove(i);
+            }
+        }
+        List<LibraryItem<T>> added = new ArrayList<>(items.size());
+        position = 0;
+        for (LibraryItem<T> item : items) {
+            int[] range = positions.get(item.getId());
+            if (range == null || range[1] == position) {
+                added.add(item);
+            }
+            position++;
+        }
+        return added;
+    }
+
+    /**
+     * Creates the map holding the items of a single category in the category index.
+     * @return A new, empty category bucket.
+     */
+    protected Map<ItemId, LibraryItem<T>> newCategoryBucket() {
+        return new ItemIdMap<>();
+    }
+
+    /**
+     * Adds an item to the bucket of its category in the category index.
+     * Only a new category locks the index; writers to an existing category just put into its bucket,
+     * so concurrent writers to one category do not queue on the category's entry.
+     * @param item The LibraryItem to index.
+     */
+    private void indexItem(LibraryItem<T> item) {
+        categoryIndex.computeIfAbsent(item.getCategory(), category -> newCategoryBucket()).put(item.getId(), item);
+    }
+
+    /**
+     * Removes an item from the category index. A category whose bucket is left empty is dropped,
+     * unless the catalog is concurrent, where readers skip empty buckets instead.
+     * @param item The LibraryItem to unindex.
+     */
+    private void unindexItem(LibraryItem<T> item) {
+        Map<ItemId, LibraryItem<T>> items = categoryIndex.get(item.getCategory());
+        if (items != null) {
+            items.remove(item.getId());
+            if (!concurrent && items.isEmpty()) {
+                categoryIndex.remove(item.getCategory());
+            }
+        }
+    }
+}
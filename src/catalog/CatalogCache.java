@@ -0,0 +1,533 @@
+package catalog;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * A read-through cache in front of a Catalog for repeated queries and rendered tables.
+ *
+ * Results are computed from the catalog on a miss and kept until the part of the catalog they were built from
+ * changes. Each category has a version that moves on every add or remove of one of its items, so a change to one
+ * category invalidates only the results built from that category, the all-items results and, when a category
+ * appears or disappears, the category list. A result is checked against its versions when it is read rather
+ * than purged when they move, which keeps the catalog's write path to a counter bump.
+ *
+ * The cache is bounded by the estimated heap its results retain. When it is full the least recently used results
+ * are evicted. With the TINY_LFU policy a new result is only admitted if it has been asked for more often than
+ * the results it would evict, which keeps a scan over many cold categories from flushing the hot ones.
+ * The cache is safe to use from several threads if the catalog is.
+ */
+public class CatalogCache<T> implements CatalogListener<T> {
+    // Approximate heap retained per element of a cached collection, on top of the elements themselves
+    private static final int BYTES_PER_ELEMENT = 8;
+    // Approximate heap retained per entry of a cached set or map
+    private static final int BYTES_PER_ENTRY = 48;
+
+    /**
+     * How the cache chooses what to keep when it is full.
+     */
+    public enum Policy {
+        /** Always admit new results and evict the least recently used. */
+        LRU,
+        /** Evict the least recently used, but only admit a result asked for more often than its victims. */
+        TINY_LFU
+    }
+
+    // The catalog the results are computed from
+    private final Catalog<T> catalog;
+    // Upper bound on the estimated heap retained by the cached results, in bytes
+    private final long maxWeight;
+    // Access frequencies used to decide admission, or null with the LRU policy; guarded by entries
+    private final FrequencySketch sketch;
+    // Cached results in access order, least recently used first; guarded by itself
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    // Estimated heap retained by the cached results; guarded by entries
+    private long weight;
+
+    // Version of each category present in the catalog; guarded by versions
+    private final Map<T, CategoryState> versions = new HashMap<>();
+    // Logical clock every version is taken from, so a version is never reused; guarded by versions
+    private long clock;
+    // Version of the whole catalog, moved by every change; guarded by versions
+    private long allVersion;
+    // Version of the set of categories, moved when a category appears or disappears; guarded by versions
+    private long categorySetVersion;
+
+    // Statistics
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+
+    /**
+     * The kinds of result the cache holds.
+     */
+    private enum Kind {
+        ITEMS, RENDERED, CATEGORIES, COUNTS
+    }
+
+    /**
+     * Identifies a cached result: its kind and the category it was built from, or null for all items.
+     */
+    private static final class Key {
+        private final Kind kind;
+        private final Object category;
+
+        private Key(Kind kind, Object category) {
+            this.kind = kind;
+            this.category = category;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) other;
+            return kind == key.kind && Objects.equals(category, key.category);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * kind.hashCode() + Objects.hashCode(category);
+        }
+    }
+
+    /**
+     * A cached result with the version it was computed at and its estimated weight.
+     */
+    private static final class Entry {
+        private final Object value;
+        private final long version;
+        private final long weight;
+
+        private Entry(Object value, long version, long weight) {
+            this.value = value;
+            this.version = version;
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * The version and number of items of a category.
+     */
+    private static final class CategoryState {
+        private long version;
+        private int count;
+    }
+
+    /**
+     * Creates an LRU cache in front of a catalog and starts listening to its changes.
+     * @param catalog The catalog to cache results of.
+     * @param maxWeight The maximum estimated heap, in bytes, retained by cached results.
+     * @throws IllegalArgumentException if the maximum weight is not positive.
+     */
+    public CatalogCache(Catalog<T> catalog, long maxWeight) {
+        this(catalog, maxWeight, Policy.LRU);
+    }
+
+    /**
+     * Creates a cache in front of a catalog and starts listening to its changes.
+     * @param catalog The catalog to cache results of.
+     * @param maxWeight The maximum estimated heap, in bytes, retained by cached results.
+     * @param policy The eviction policy.
+     * @throws IllegalArgumentException if the maximum weight is not positive.
+     */
+    public CatalogCache(Catalog<T> catalog, long maxWeight, Policy policy) {
+        if (maxWeight <= 0) {
+            throw new IllegalArgumentException("Maximum cache weight must be positive.");
+        }
+        this.catalog = catalog;
+        this.maxWeight = maxWeight;
+        this.sketch = policy == Policy.TINY_LFU ? new FrequencySketch() : null;
+        synchronized (versions) {
+            for (Map.Entry<T, Integer> category : catalog.getCategoryCounts().entrySet()) {
+                CategoryState state = new CategoryState();
+                state.count = category.getValue();
+                versions.put(category.getKey(), state);
+            }
+        }
+        catalog.addListener(this);
+    }
+
+    /**
+     * Stops listening to the catalog and drops every cached result.
+     * The cache must not be used afterwards.
+     */
+    public void detach() {
+        catalog.removeListener(this);
+        invalidateAll();
+    }
+
+    /**
+     * Drops every cached result.
+     */
+    public void invalidateAll() {
+        synchronized (entries) {
+            entries.clear();
+            weight = 0;
+        }
+    }
+
+    @Override
+    public void itemAdded(LibraryItem<T> item) {
+        synchronized (versions) {
+            long version = ++clock;
+            allVersion = version;
+            CategoryState state = versions.get(item.getCategory());
+            if (state == null) {
+                state = new CategoryState();
+                versions.put(item.getCategory(), state);
+                categorySetVersion = version;
+            }
+            state.version = version;
+            state.count++;
+        }
+    }
+
+    @Override
+    public void itemRemoved(LibraryItem<T> item) {
+        synchronized (versions) {
+            long version = ++clock;
+            allVersion = version;
+            CategoryState state = versions.get(item.getCategory());
+            if (state == null) {
+                return;
+            }
+            state.version = version;
+            if (--state.count == 0) {
+                versions.remove(item.getCategory());
+                categorySetVersion = version;
+            }
+        }
+    }
+
+    @Override
+    public void itemsAdded(Collection<LibraryItem<T>> items) {
+        synchronized (versions) {
+            for (LibraryItem<T> item : items) {
+                itemAdded(item);
+            }
+        }
+    }
+
+    /**
+     * Retrieves all unique categories of items in the catalog.
+     * @return An unmodifiable set of the categories present in the catalog.
+     */
+    @SuppressWarnings("unchecked")
+    public Set<T> getCategories() {
+        return (Set<T>) get(new Key(Kind.CATEGORIES, null), () -> {
+            Set<T> categories = Collections.unmodifiableSet(catalog.getCategories());
+            return new Entry(categories, 0, (long) categories.size() * BYTES_PER_ENTRY);
+        });
+    }
+
+    /**
+     * Retrieves the number of items in each category.
+     * @return An unmodifiable map of each category present in the catalog to its item count.
+     */
+    @SuppressWarnings("unchecked")
+    public Map<T, Integer> getCategoryCounts() {
+        return (Map<T, Integer>) get(new Key(Kind.COUNTS, null), () -> {
+            Map<T, Integer> counts = Collections.unmodifiableMap(catalog.getCategoryCounts());
+            return new Entry(counts, 0, (long) counts.size() * BYTES_PER_ENTRY);
+        });
+    }
+
+    /**
+     * Retrieves all items in a specific category.
+     * @param category The category to look up.
+     * @return An unmodifiable snapshot of the items in the category, empty if the category is not present.
+     */
+    @SuppressWarnings("unchecked")
+    public List<LibraryItem<T>> getItemsByCategory(T category) {
+        return (List<LibraryItem<T>>) get(new Key(Kind.ITEMS, category), () -> {
+            List<LibraryItem<T>> items = List.copyOf(catalog.getItemsByCategory(category));
+            return new Entry(items, 0, (long) items.size() * BYTES_PER_ELEMENT);
+        });
+    }
+
+    /**
+     * Writes the catalog items as a table to the given output, optionally filtered by category.
+     * Tables too large to fit in the cache are streamed from the catalog as usual and not cached.
+     * @param category An Optional containing the category to filter by. If empty, all items are written.
+     * @param out The destination of the table.
+     * @throws IOException if writing to the destination fails.
+     */
+    public void displayCatalog(Optional<T> category, Appendable out) throws IOException {
+        int rows = category.isPresent() ? catalog.getItemsByCategory(category.get()).size() : catalog.size();
+        // Strings hold up to two bytes per character
+        long estimatedWeight = 2 * CatalogRenderer.estimateLength(rows);
+        if (estimatedWeight > maxWeight) {
+            misses.increment();
+            catalog.displayCatalog(category, out);
+            return;
+        }
+        String table = (String) get(new Key(Kind.RENDERED, category.orElse(null)), () -> {
+            StringBuilder rendered = new StringBuilder((int) (estimatedWeight / 2));
+            try {
+                catalog.displayCatalog(category, rendered);
+            } catch (IOException e) {
+                // A StringBuilder never throws
+                throw new AssertionError(e);
+            }
+            return new Entry(rendered.toString(), 0, 2L * rendered.length());
+        });
+        out.append(table);
+    }
+
+    /**
+     * Returns a cached result if it is still current, or computes and caches it.
+     * @param key The result to look up.
+     * @param compute Computes the result, returning an entry whose version is ignored.
+     * @return The current result.
+     */
+    private Object get(Key key, Supplier<Entry> compute) {
+        // Take the version before computing, so a change made while computing leaves the result stale
+        long version = versionOf(key);
+        synchronized (entries) {
+            if (sketch != null) {
+                sketch.increment(key);
+            }
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (entry.version == version) {
+                    hits.increment();
+                    return entry.value;
+                }
+                entries.remove(key);
+                weight -= entry.weight;
+                invalidations.increment();
+            }
+        }
+        misses.increment();
+        Entry computed = compute.get();
+        Entry entry = new Entry(computed.value, version, computed.weight + BYTES_PER_ENTRY);
+        if (versionOf(key) == version) {
+            admit(key, entry);
+        }
+        return entry.value;
+    }
+
+    /**
+     * Caches a result, evicting least recently used results to make room if the policy allows it.
+     * @param key The result's key.
+     * @param entry The result.
+     */
+    private void admit(Key key, Entry entry) {
+        if (entry.weight > maxWeight) {
+            rejections.increment();
+            return;
+        }
+        synchronized (entries) {
+            Entry previous = entries.remove(key);
+            if (previous != null) {
+                weight -= previous.weight;
+            }
+            // Check every victim before evicting any, so a rejected result leaves the cache as it was
+            if (sketch != null) {
+                long needed = weight + entry.weight - maxWeight;
+                int frequency = sketch.frequency(key);
+                Iterator<Map.Entry<Key, Entry>> victims = entries.entrySet().iterator();
+                while (needed > 0 && victims.hasNext()) {
+                    Map.Entry<Key, Entry> victim = victims.next();
+                    if (sketch.frequency(victim.getKey()) >= frequency) {
+                        rejections.increment();
+                        return;
+                    }
+                    needed -= victim.getValue().weight;
+                }
+            }
+            Iterator<Map.Entry<Key, Entry>> eldest = entries.entrySet().iterator();
+            while (weight + entry.weight > maxWeight && eldest.hasNext()) {
+                weight -= eldest.next().getValue().weight;
+                eldest.remove();
+                evictions.increment();
+            }
+            entries.put(key, entry);
+            weight += entry.weight;
+        }
+    }
+
+    /**
+     * Gets the version a result must have been computed at to be current.
+     * @param key The result.
+     * @return The version of its category, the whole catalog or the category set.
+     */
+    private long versionOf(Key key) {
+        synchronized (versions) {
+            switch (key.kind) {
+                case CATEGORIES:
+                    return categorySetVersion;
+                case COUNTS:
+                    return allVersion;
+                default:
+                    if (key.category == null) {
+                        return allVersion;
+                    }
+                    CategoryState state = versions.get(key.category);
+                    // An absent category reads as the category set's version, which moves when it reappears
+                    return state == null ? categorySetVersion : state.version;
+            }
+        }
+    }
+
+    /**
+     * Gets a snapshot of the cache statistics.
+     * @return The statistics.
+     */
+    public Stats getStats() {
+        synchronized (entries) {
+            return new Stats(hits.sum(), misses.sum(), evictions.sum(), invalidations.sum(), rejections.sum(),
+                             entries.size(), weight);
+        }
+    }
+
+    /**
+     * A count-min sketch of 4-bit access counters, halved periodically so old popularity fades.
+     */
+    private static final class FrequencySketch {
+        // Number of counters, a power of two; 16 counters per long
+        private static final int COUNTERS = 1 << 14;
+        // Number of increments after which every counter is halved
+        private static final int SAMPLE_SIZE = 10 * COUNTERS;
+
+        private final long[] table = new long[COUNTERS / 16];
+        private int increments;
+
+        private void increment(Object key) {
+            int hash = spread(key.hashCode());
+            for (int i = 0; i < 4; i++) {
+                int counter = index(hash, i);
+                long shift = (counter & 15) * 4L;
+                if (((table[counter >>> 4] >>> shift) & 15) < 15) {
+                    table[counter >>> 4] += 1L << shift;
+                }
+            }
+            if (++increments == SAMPLE_SIZE) {
+                for (int i = 0; i < table.length; i++) {
+                    table[i] = (table[i] >>> 1) & 0x7777777777777777L;
+                }
+                increments /= 2;
+            }
+        }
+
+        private int frequency(Object key) {
+            int hash = spread(key.hashCode());
+            int frequency = 15;
+            for (int i = 0; i < 4; i++) {
+                int counter = index(hash, i);
+                frequency = Math.min(frequency, (int) ((table[counter >>> 4] >>> ((counter & 15) * 4)) & 15));
+            }
+            return frequency;
+        }
+
+        private static int index(int hash, int i) {
+            int h = (hash + i) * 0x9E3779B9 + i * 0x85EBCA6B;
+            return (h ^ (h >>> 15)) & (COUNTERS - 1);
+        }
+
+        private static int spread(int hash) {
+            hash *= 0xCC9E2D51;
+            return hash ^ (hash >>> 17);
+        }
+    }
+
+    /**
+     * A snapshot of the hits, misses and evictions of a cache.
+     */
+    public static final class Stats {
+        private final long hits;
+        private final long misses;
+        private final long evictions;
+        private final long invalidations;
+        private final long rejections;
+        private final int size;
+        private final long weight;
+
+        private Stats(long hits, long misses, long evictions, long invalidations, long rejections, int size, long weight) {
+            this.hits = hits;
+            this.misses = misses;
+            this.evictions = evictions;
+            this.invalidations = invalidations;
+            this.rejections = rejections;
+            this.size = size;
+            this.weight = weight;
+        }
+
+        /**
+         * Gets the number of lookups answered from the cache.
+         * @return The number of hits.
+         */
+        public long getHits() {
+            return hits;
+        }
+
+        /**
+         * Gets the number of lookups that had to be computed from the catalog.
+         * @return The number of misses, including lookups that found a stale result.
+         */
+        public long getMisses() {
+            return misses;
+        }
+
+        /**
+         * Gets the number of results dropped to make room for others.
+         * @return The number of evictions.
+         */
+        public long getEvictions() {
+            return evictions;
+        }
+
+        /**
+         * Gets the number of results found stale because the catalog changed.
+         * @return The number of invalidated results.
+         */
+        public long getInvalidations() {
+            return invalidations;
+        }
+
+        /**
+         * Gets the number of computed results not cached, because they were too large or not admitted.
+         * @return The number of rejected results.
+         */
+        public long getRejections() {
+            return rejections;
+        }
+
+        /**
+         * Gets the number of cached results.
+         * @return The number of entries in the cache.
+         */
+        public int getSize() {
+            return size;
+        }
+
+        /**
+         * Gets the estimated heap retained by the cached results.
+         * @return The weight in bytes.
+         */
+        public long getWeight() {
+            return weight;
+        }
+
+        /**
+         * Gets the share of lookups answered from the cache.
+         * @return The hit rate between 0 and 1, or 0 if there have been no lookups.
+         */
+        public double getHitRate() {
+            long lookups = hits + misses;
+            return lookups == 0 ? 0 : (double) hits / lookups;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d hits, %d misses (%.1f%% hit rate), %d evictions, %d invalidations, %d rejections, %d entries, %d bytes",
+                    hits, misses, 100 * getHitRate(), evictions, invalidations, rejections, size, weight);
+        }
+    }
+}
@@ -0,0 +1,539 @@
+package catalog;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.function.Function;
+
+// Import validators package
+import validators.*;
+
+/**
+ * Bulk-loads library items into a Catalog from CSV or JSON Lines files.
+ * Files are streamed through a large buffered reader and parsed into batches that are added with Catalog.addAll.
+ *
+ * CSV rows hold title, author, category, release date and an optional date added, in that order.
+ * Fields may be quoted with double quotes, and a header row whose first field is "title" is skipped.
+ * JSON Lines rows are flat objects with the string fields title, author, category, releaseDate and optionally dateAdded.
+ * Rows that cannot be parsed are counted as rejected and skipped.
+ */
+public class CatalogImporter<T> {
+    // Size of the read buffer in characters
+    private static final int READ_BUFFER_SIZE = 1 << 20;
+    // Number of parsed items handed to the catalog at a time
+    private static final int BATCH_SIZE = 64 * 1024;
+    // Maximum number of rejection messages kept in an ImportResult
+    private static final int MAX_REJECTION_MESSAGES = 100;
+
+    // Parses category text into the catalog's category type
+    private final Function<String, T> categoryParser;
+    // Accepted formats of the date columns
+    private final DateTimeFormatter[] formatters;
+
+    /**
+     * Creates an importer.
+     * Each import learns which of the formats its file uses, so a file in one format pays for one parse per date.
+     * @param categoryParser A function that parses category text into the category type.
+     * @param formatters The DateTimeFormatters accepted for dates, e.g. DateParser.DAY_FIRST_FORMATS.
+     * @throws IllegalArgumentException if no formats are given.
+     */
+    public CatalogImporter(Function<String, T> categoryParser, DateTimeFormatter... formatters) {
+        if (formatters.length == 0) {
+            throw new IllegalArgumentException("At least one date format is required.");
+        }
+        this.categoryParser = categoryParser;
+        this.formatters = formatters.clone();
+    }
+
+    /**
+     * Imports a file, choosing the format from its extension (.csv, or .jsonl/.ndjson).
+     * @param path The file to import.
+     * @param catalog The catalog to add the items to.
+     * @return The import statistics.
+     * @throws IOException if the file cannot be read.
+     * @throws IllegalArgumentException if the file extension is not recognised.
+     */
+    public ImportResult importFile(Path path, Catalog<T> catalog) throws IOException {
+        String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".csv")) {
+            return importCsv(path, catalog);
+        } else if (name.endsWith(".jsonl") || name.endsWith(".ndjson")) {
+            return importJsonLines(path, catalog);
+        }
+        throw new IllegalArgumentException("Unsupported file type: " + path);
+    }
+
+    /**
+     * Imports a CSV file.
+     * @param path The file to import.
+     * @param catalog The catalog to add the items to.
+     * @return The import statistics.
+     * @throws IOException if the file cannot be read.
+     */
+    public ImportResult importCsv(Path path, Catalog<T> catalog) throws IOException {
+        try (BufferedReader reader = open(path)) {
+            return importLines(reader, catalog, this::parseCsvFields, true);
+        }
+    }
+
+    /**
+     * Imports a JSON Lines file.
+     * @param path The file to import.
+     * @param catalog The catalog to add the items to.
+     * @return The import statistics.
+     * @throws IOException if the file cannot be read.
+     */
+    public ImportResult importJsonLines(Path path, Catalog<T> catalog) throws IOException {
+        try (BufferedReader reader = open(path)) {
+            return importLines(reader, catalog, this::parseJsonFields, false);
+        }
+    }
+
+    /**
+     * Imports CSV rows from a reader, which is not closed.
+     * @param reader The source of the rows.
+     * @param catalog The catalog to add the items to.
+     * @return The import statistics.
+     * @throws IOException if the reader fails.
+     */
+    public ImportResult importCsv(BufferedReader reader, Catalog<T> catalog) throws IOException {
+        return importLines(reader, catalog, this::parseCsvFields, true);
+    }
+
+    /**
+     * Imports JSON Lines rows from a reader, which is not closed.
+     * @param reader The source of the rows.
+     * @param catalog The catalog to add the items to.
+     * @return The import statistics.
+     * @throws IOException if the reader fails.
+     */
+    public ImportResult importJsonLines(BufferedReader reader, Catalog<T> catalog) throws IOException {
+        return importLines(reader, catalog, this::parseJsonFields, false);
+    }
+
+    /**
+     * Opens a file for reading with a large buffer.
+     * @param path The file to open.
+     * @return A buffered UTF-8 reader.
+     * @throws IOException if the file cannot be opened.
+     */
+    private static BufferedReader open(Path path) throws IOException {
+        return new BufferedReader(new InputStreamReader(Files.newInputStream(path), StandardCharsets.UTF_8), READ_BUFFER_SIZE);
+    }
+
+    /**
+     * Parses every non-blank line into an item and adds them to the catalog in batches.
+     * @param reader The source of the rows.
+     * @param catalog The catalog to add the items to.
+     * @param fieldParser Splits a line into title, author, category, release date and date added (which may be null).
+     * @param skipHeader true if a leading header row should be skipped.
+     * @return The import statistics.
+     * @throws IOException if the reader fails.
+     */
+    private ImportResult importLines(BufferedReader reader, Catalog<T> catalog, Function<String, String[]> fieldParser, boolean skipHeader) throws IOException {
+        long start = System.nanoTime();
+        ImportResult result = new ImportResult();
+        List<LibraryItem<T>> batch = new ArrayList<>(BATCH_SIZE);
+        // Items without a date added are stamped with the date the import started
+        LocalDate today = LocalDate.now();
+        // Learns the date formats of this source
+        DateParser dates = new DateParser(formatters);
+        long lineNumber = 0;
+        String line;
+        while ((line = reader.readLine()) != null) {
+            lineNumber++;
+            // Spreadsheet exports often start with a byte order mark, which would hide the header
+            if (lineNumber == 1 && line.startsWith("\uFEFF")) {
+                line = line.substring(1);
+            }
+            if (line.isBlank()) {
+                continue;
+            }
+            String[] fields = fieldParser.apply(line);
+            if (skipHeader && lineNumber == 1 && fields != null && fields[0].trim().equalsIgnoreCase("title")) {
+                continue;
+            }
+            String error = fields == null ? "Malformed row." : validateFields(fields);
+            if (error != null) {
+                result.reject(lineNumber, error);
+                continue;
+            }
+            try {
+                batch.add(toItem(fields, today, dates));
+            } catch (RuntimeException e) {
+                result.reject(lineNumber, e.getMessage());
+                continue;
+            }
+            if (batch.size() == BATCH_SIZE) {
+                catalog.addAll(batch);
+                result.imported += batch.size();
+                batch.clear();
+            }
+        }
+        catalog.addAll(batch);
+        result.imported += batch.size();
+        result.elapsedNanos = System.nanoTime() - start;
+        return result;
+    }
+
+    /**
+     * Checks that the required fields are present.
+     * @param fields The title, author, category, release date and date added fields.
+     * @return An error message, or null if the fields are usable.
+     */
+    private static String validateFields(String[] fields) {
+        if (fields[0] == null || fields[0].isBlank()) {
+            return "Title must not be empty.";
+        }
+        if (fields[1] == null || fields[1].isBlank()) {
+            return "Author must not be empty.";
+        }
+        if (fields[2] == null || fields[2].isBlank()) {
+            return "Category must not be empty.";
+        }
+        if (fields[3] == null || fields[3].isBlank()) {
+            return "Release date must not be empty.";
+        }
+        return null;
+    }
+
+    /**
+     * Builds an item from validated fields.
+     * @param fields The title, author, category, release date and date added fields.
+     * @param today The date added to use when the row has none.
+     * @param dates The date parser of the source.
+     * @return The new LibraryItem.
+     * @throws IllegalArgumentException if a date cannot be parsed.
+     */
+    private LibraryItem<T> toItem(String[] fields, LocalDate today, DateParser dates) {
+        LocalDate releaseDate = parseDate(fields[3], "release date", dates);
+        LocalDate dateAdded = fields[4] == null || fields[4].isBlank()
+                ? today
+                : parseDate(fields[4], "date added", dates);
+        return new LibraryItem<>(ItemIdGenerator.nextId(), fields[0], fields[1], categoryParser.apply(fields[2]), releaseDate, dateAdded);
+    }
+
+    /**
+     * Parses a date field without going through DateTimeParseException for bad input.
+     * @param field The field to parse.
+     * @param name The field name for the error message.
+     * @param dates The date parser of the source.
+     * @return The parsed date.
+     * @throws IllegalArgumentException if the field is not a date in any of the importer's formats.
+     */
+    private static LocalDate parseDate(String field, String name, DateParser dates) {
+        LocalDate date = dates.parse(field.trim());
+        if (date == null) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + field.trim());
+        }
+        return date;
+    }
+
+    /**
+     * Splits a CSV line into its fields, honouring double-quoted fields with "" escapes.
+     * @param line The line to split.
+     * @return The five fields (missing trailing fields are null), or null if the line is malformed.
+     */
+    private String[] parseCsvFields(String line) {
+        String[] fields = new String[5];
+        StringBuilder field = new StringBuilder();
+        int count = 0;
+        int i = 0;
+        int length = line.length();
+        while (true) {
+            field.setLength(0);
+            if (i < length && line.charAt(i) == '"') {
+                i++;
+                while (true) {
+                    if (i >= length) {
+                        return null; // Unterminated quote
+                    }
+                    char c = line.charAt(i++);
+                    if (c == '"') {
+                        if (i < length && line.charAt(i) == '"') {
+                            field.append('"');
+                            i++;
+                        } else {
+                            break;
+                        }
+                    } else {
+                        field.append(c);
+                    }
+                }
+                if (i < length && line.charAt(i) != ',') {
+                    return null; // Text after a closing quote
+                }
+            } else {
+                int end = line.indexOf(',', i);
+                end = end < 0 ? length : end;
+                field.append(line, i, end);
+                i = end;
+            }
+            if (count == fields.length) {
+                return null; // Too many fields
+            }
+            fields[count++] = field.toString();
+            if (i >= length) {
+                break;
+            }
+            i++; // Skip the comma
+            if (i == length) {
+                // A trailing comma ends with an empty field
+                if (count == fields.length) {
+                    return null;
+                }
+                fields[count++] = "";
+                break;
+            }
+        }
+        return count < 4 ? null : fields;
+    }
+
+    /**
+     * Extracts the item fields from a flat JSON object.
+     * @param line The line holding the object.
+     * @return The five fields (absent fields are null), or null if the line is malformed.
+     */
+    private String[] parseJsonFields(String line) {
+        String[] fields = new String[5];
+        JsonCursor cursor = new JsonCursor(line);
+        if (!cursor.consume('{')) {
+            return null;
+        }
+        if (!cursor.consume('}')) {
+            do {
+                String key = cursor.readString();
+                if (key == null || !cursor.consume(':')) {
+                    return null;
+                }
+                String value = cursor.readValue();
+                if (cursor.failed) {
+                    return null;
+                }
+                switch (key) {
+                    case "title":
+                        fields[0] = value;
+                        break;
+                    case "author":
+                        fields[1] = value;
+                        break;
+                    case "category":
+                        fields[2] = value;
+                        break;
+                    case "releaseDate":
+                        fields[3] = value;
+                        break;
+                    case "dateAdded":
+                        fields[4] = value;
+                        break;
+                    default:
+                        // Ignore unknown keys
+                        break;
+                }
+            } while (cursor.consume(','));
+            if (!cursor.consume('}')) {
+                return null;
+            }
+        }
+        return cursor.atEnd() ? fields : null;
+    }
+
+    /**
+     * A minimal reader for the flat JSON objects used in JSON Lines imports.
+     * Values must be strings, numbers, booleans or null; nested objects and arrays are rejected.
+     */
+    private static class JsonCursor {
+        private final String text;
+        private final StringBuilder scratch = new StringBuilder();
+        private int position;
+        private boolean failed;
+
+        JsonCursor(String text) {
+            this.text = text;
+        }
+
+        /**
+         * Skips whitespace and consumes the given character if it is next.
+         * @param expected The character to consume.
+         * @return true if the character was consumed.
+         */
+        boolean consume(char expected) {
+            skipWhitespace();
+            if (position < text.length() && text.charAt(position) == expected) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Checks that only whitespace remains.
+         * @return true if the end of the text was reached.
+         */
+        boolean atEnd() {
+            skipWhitespace();
+            return position == text.length();
+        }
+
+        /**
+         * Reads a scalar value, returning strings unescaped and other scalars as their literal text.
+         * @return The value, or null for a JSON null; sets failed if the value is malformed.
+         */
+        String readValue() {
+            skipWhitespace();
+            if (position < text.length() && text.charAt(position) == '"') {
+                String value = readString();
+                failed = value == null;
+                return value;
+            }
+            int start = position;
+            while (position < text.length() && ",} \t".indexOf(text.charAt(position)) < 0) {
+                position++;
+            }
+            String literal = text.substring(start, position);
+            if (literal.isEmpty() || literal.startsWith("{") || literal.startsWith("[")) {
+                failed = true;
+                return null;
+            }
+            return literal.equals("null") ? null : literal;
+        }
+
+        /**
+         * Reads a quoted string, resolving escape sequences.
+         * @return The string, or null if no well-formed string is next.
+         */
+        String readString() {
+            if (!consume('"')) {
+                return null;
+            }
+            scratch.setLength(0);
+            while (position < text.length()) {
+                char c = text.charAt(position++);
+                if (c == '"') {
+                    return scratch.toString();
+                }
+                if (c != '\\') {
+                    scratch.append(c);
+                    continue;
+                }
+                if (position >= text.length()) {
+                    return null;
+                }
+                char escape = text.charAt(position++);
+                switch (escape) {
+                    case '"':
+                    case '\\':
+                    case '/':
+                        scratch.append(escape);
+                        break;
+                    case 'b':
+                        scratch.append('\b');
+                        break;
+                    case 'f':
+                        scratch.append('\f');
+                        break;
+                    case 'n':
+                        scratch.append('\n');
+                        break;
+                    case 'r':
+                        scratch.append('\r');
+                        break;
+                    case 't':
+                        scratch.append('\t');
+                        break;
+                    case 'u':
+                        if (position + 4 > text.length()) {
+                            return null;
+                        }
+                        try {
+                            scratch.append((char) Integer.parseInt(text.substring(position, position + 4), 16));
+                        } catch (NumberFormatException e) {
+                            return null;
+                        }
+                        position += 4;
+                        break;
+                    default:
+                        return null;
+                }
+            }
+            return null;
+        }
+
+        private void skipWhitespace() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+    }
+
+    /**
+     * Statistics for a completed import.
+     */
+    public static class ImportResult {
+        private long imported;
+        private long rejected;
+        private long elapsedNanos;
+        private final List<String> rejections = new ArrayList<>();
+
+        /**
+         * Records a rejected row.
+         * @param lineNumber The line number of the row.
+         * @param reason Why the row was rejected.
+         */
+        private void reject(long lineNumber, String reason) {
+            rejected++;
+            if (rejections.size() < MAX_REJECTION_MESSAGES) {
+                rejections.add("Line " + lineNumber + ": " + reason);
+            }
+        }
+
+        /**
+         * Gets the number of items added to the catalog.
+         * @return The number of imported rows.
+         */
+        public long getImported() {
+            return imported;
+        }
+
+        /**
+         * Gets the number of rows that were skipped.
+         * @return The number of rejected rows.
+         */
+        public long getRejected() {
+            return rejected;
+        }
+
+        /**
+         * Gets the time the import took.
+         * @return The elapsed time in nanoseconds.
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * Gets the import throughput, counting both imported and rejected rows.
+         * @return The number of rows processed per second.
+         */
+        public double getRowsPerSecond() {
+            return elapsedNanos == 0 ? 0 : (imported + rejected) * 1_000_000_000.0 / elapsedNanos;
+        }
+
+        /**
+         * Gets the reasons for the first rejected rows.
+         * @return Up to 100 rejection messages, each prefixed with its line number.
+         */
+        public List<String> getRejections() {
+            return Collections.unmodifiableList(rejections);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Imported %d rows, rejected %d rows in %.1f ms (%.0f rows/sec)",
+                    imported, rejected, elapsedNanos / 1_000_000.0, getRowsPerSecond());
+        }
+    }
+}
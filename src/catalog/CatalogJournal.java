@@ -0,0 +1,33 @@
+package catalog;
+
+import java.util.Collection;
+
+/**
+ * Records the changes to a Catalog before they are applied, so a change is durable before anyone can see it.
+ *
+ * The catalog calls its journal while holding the write lock of each changed item, so every item's changes
+ * are journaled in the order they are applied. If the journal throws, the change is not applied and the
+ * exception reaches the caller of the catalog method.
+ */
+public interface CatalogJournal<T> {
+
+    /**
+     * Called before items are added. An item may replace an item with the same ID already in the catalog,
+     * and an ID may appear more than once, in which case its last item is the one kept.
+     * @param items The items about to be added, in order.
+     */
+    void beforeAdd(Collection<LibraryItem<T>> items);
+
+    /**
+     * Called before an item is removed.
+     * @param item The item about to be removed.
+     */
+    void beforeRemove(LibraryItem<T> item);
+
+    /**
+     * Called after a change has been applied and its write locks released, on the thread that made it.
+     * A journal can use it for work that must not run under a write lock, such as compaction.
+     */
+    default void changeApplied() {
+    }
+}
@@ -0,0 +1,37 @@
+package catalog;
+
+import java.util.Collection;
+
+/**
+ * Receives the changes made to a Catalog, after they have been applied.
+ * Listeners are called on the thread that made the change, while it holds the changed item's write lock, so
+ * each item's changes reach a listener in the order they were applied. With a ConcurrentCatalog listeners
+ * must be thread-safe, and must not change the catalog themselves.
+ */
+public interface CatalogListener<T> {
+
+    /**
+     * Called after an item has been added to the catalog.
+     * If it replaced an item with the same ID, itemRemoved is called for the old item first.
+     * @param item The added item.
+     */
+    void itemAdded(LibraryItem<T> item);
+
+    /**
+     * Called after an item has been removed from the catalog.
+     * @param item The removed item.
+     */
+    void itemRemoved(LibraryItem<T> item);
+
+    /**
+     * Called after a batch of items has been added with Catalog.addAll.
+     * If the batch held an ID more than once, only the last item with that ID is passed, as the earlier ones
+     * were replaced within the batch. By default each item is passed to itemAdded in turn.
+     * @param items The added items.
+     */
+    default void itemsAdded(Collection<LibraryItem<T>> items) {
+        for (LibraryItem<T> item : items) {
+            itemAdded(item);
+        }
+    }
+}
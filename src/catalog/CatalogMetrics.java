@@ -0,0 +1,313 @@
+package catalog;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.*;
+
+/**
+ * Operation counts, latency histograms and size gauges for one Catalog, enabled with Catalog.enableMetrics.
+ *
+ * Every public Catalog operation is counted in a LongAdder. Lookups, changes, getCategories, table rendering
+ * and queries are also timed into a LatencyHistogram. While metrics are disabled a catalog pays one field
+ * read and a branch per call. The metrics can be read directly, written as a text table with dump,
+ * or published as a JMX MBean. They are safe to update and read from several threads.
+ */
+public class CatalogMetrics {
+    // Used by the catalog for calls that started before metrics were enabled
+    static final long NOT_TIMED = Long.MIN_VALUE;
+
+    /**
+     * The instrumented Catalog operations.
+     */
+    public enum Operation {
+        ADD_ITEM("addItem", true),
+        ADD_ALL("addAll", true),
+        REMOVE_ITEM("removeItem", true),
+        GET_ITEM("getItem", true),
+        HAS_ITEM("hasItem", false),
+        GET_ITEMS("getItems", false),
+        GET_CATEGORIES("getCategories", true),
+        GET_CATEGORY_COUNTS("getCategoryCounts", false),
+        GET_ITEMS_BY_CATEGORY("getItemsByCategory", false),
+        DISPLAY_CATALOG("displayCatalog", true),
+        DISPLAY_CATALOG_PAGE("displayCatalogPage", true),
+        QUERY("query", true);
+
+        private final String methodName;
+        private final boolean timed;
+
+        Operation(String methodName, boolean timed) {
+            this.methodName = methodName;
+            this.timed = timed;
+        }
+
+        /**
+         * Gets the name of the Catalog method.
+         * @return The method name, e.g. "addItem".
+         */
+        public String getMethodName() {
+            return methodName;
+        }
+
+        /**
+         * Checks whether the operation's latency is recorded as well as its count.
+         * @return true if the operation has a latency histogram.
+         */
+        public boolean isTimed() {
+            return timed;
+        }
+    }
+
+    // The catalog the gauges read from
+    private final Catalog<?> catalog;
+    // Number of calls to each operation, by ordinal
+    private final LongAdder[] counts = new LongAdder[Operation.values().length];
+    // Latencies of each timed operation, by ordinal; null for operations that are only counted
+    private final LatencyHistogram[] latencies = new LatencyHistogram[Operation.values().length];
+    // Name the MBean is registered under, or null if it is not registered
+    private ObjectName objectName;
+
+    /**
+     * Creates empty metrics for a catalog.
+     * @param catalog The catalog whose sizes are reported.
+     */
+    CatalogMetrics(Catalog<?> catalog) {
+        this.catalog = catalog;
+        for (Operation operation : Operation.values()) {
+            counts[operation.ordinal()] = new LongAdder();
+            if (operation.timed) {
+                latencies[operation.ordinal()] = new LatencyHistogram();
+            }
+        }
+    }
+
+    /**
+     * Counts a call and, for timed operations, records its latency.
+     * @param operation The operation called.
+     * @param start The System.nanoTime at the start of the call, or NOT_TIMED.
+     */
+    void record(Operation operation, long start) {
+        counts[operation.ordinal()].increment();
+        LatencyHistogram histogram = latencies[operation.ordinal()];
+        if (histogram != null && start != NOT_TIMED) {
+            histogram.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * Gets the number of calls made to an operation.
+     * @param operation The operation.
+     * @return The number of calls since the metrics were enabled or last reset.
+     */
+    public long getCount(Operation operation) {
+        return counts[operation.ordinal()].sum();
+    }
+
+    /**
+     * Gets the latency histogram of an operation.
+     * @param operation The operation.
+     * @return The histogram, in nanoseconds.
+     * @throws IllegalArgumentException if the operation is only counted.
+     */
+    public LatencyHistogram getLatency(Operation operation) {
+        LatencyHistogram histogram = latencies[operation.ordinal()];
+        if (histogram == null) {
+            throw new IllegalArgumentException(operation.methodName + " is not timed.");
+        }
+        return histogram;
+    }
+
+    /**
+     * Gets the number of items in the catalog.
+     * @return The item count.
+     */
+    public int getItemCount() {
+        return catalog.size();
+    }
+
+    /**
+     * Gets the number of categories in the catalog.
+     * @return The category count.
+     */
+    public int getCategoryCount() {
+        return catalog.categoryCount();
+    }
+
+    /**
+     * Clears every count and histogram.
+     */
+    public void reset() {
+        for (Operation operation : Operation.values()) {
+            counts[operation.ordinal()].reset();
+            if (operation.timed) {
+                latencies[operation.ordinal()].reset();
+            }
+        }
+    }
+
+    /**
+     * Writes the gauges, and the count and latency percentiles of every operation called so far, as a text table.
+     * @param out The destination of the table.
+     * @throws IOException if writing to the destination fails.
+     */
+    public void dump(Appendable out) throws IOException {
+        out.append(String.format("items %d, categories %d%n", getItemCount(), getCategoryCount()));
+        out.append(String.format("%-20s %12s %10s %10s %10s %10s %10s%n",
+                "operation", "count", "mean us", "p50 us", "p99 us", "p99.9 us", "max us"));
+        for (Operation operation : Operation.values()) {
+            long count = getCount(operation);
+            if (count == 0) {
+                continue;
+            }
+            LatencyHistogram histogram = latencies[operation.ordinal()];
+            if (histogram == null) {
+                out.append(String.format("%-20s %12d%n", operation.methodName, count));
+            } else {
+                out.append(String.format("%-20s %12d %10.2f %10.2f %10.2f %10.2f %10.2f%n", operation.methodName, count,
+                        histogram.getMean() / 1000, histogram.getValueAtPercentile(50) / 1000.0,
+                        histogram.getValueAtPercentile(99) / 1000.0, histogram.getValueAtPercentile(99.9) / 1000.0,
+                        histogram.getMax() / 1000.0));
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder text = new StringBuilder();
+        try {
+            dump(text);
+        } catch (IOException e) {
+            // A StringBuilder never throws
+            throw new AssertionError(e);
+        }
+        return text.toString();
+    }
+
+    /**
+     * Publishes the metrics as an MBean on the platform MBean server.
+     * Attributes are ItemCount, CategoryCount, and for each operation e.g. getItem.count, getItem.p99Nanos;
+     * the operations are dump and reset.
+     * @param name The MBean's object name, e.g. "catalog:type=CatalogMetrics,name=main".
+     * @throws JMException if the name is malformed or already registered.
+     */
+    public synchronized void registerMBean(String name) throws JMException {
+        ObjectName registered = new ObjectName(name);
+        ManagementFactory.getPlatformMBeanServer().registerMBean(new MBean(), registered);
+        objectName = registered;
+    }
+
+    /**
+     * Removes the MBean from the platform MBean server, if it was registered.
+     * @throws JMException if the MBean cannot be unregistered.
+     */
+    public synchronized void unregisterMBean() throws JMException {
+        if (objectName != null) {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+            objectName = null;
+        }
+    }
+
+    /**
+     * Exposes the metrics to JMX, with attributes generated from the operations.
+     */
+    private final class MBean implements DynamicMBean {
+        // Percentile attribute suffixes and the percentile each reports
+        private final Map<String, Double> percentiles = Map.of("p50Nanos", 50.0, "p99Nanos", 99.0, "p999Nanos", 99.9);
+
+        @Override
+        public Object getAttribute(String attribute) throws AttributeNotFoundException {
+            if (attribute.equals("ItemCount")) {
+                return getItemCount();
+            } else if (attribute.equals("CategoryCount")) {
+                return getCategoryCount();
+            }
+            int dot = attribute.indexOf('.');
+            if (dot > 0) {
+                String method = attribute.substring(0, dot);
+                String statistic = attribute.substring(dot + 1);
+                for (Operation operation : Operation.values()) {
+                    if (!operation.methodName.equals(method)) {
+                        continue;
+                    }
+                    if (statistic.equals("count")) {
+                        return getCount(operation);
+                    }
+                    LatencyHistogram histogram = latencies[operation.ordinal()];
+                    if (histogram != null && statistic.equals("maxNanos")) {
+                        return histogram.getMax();
+                    } else if (histogram != null && statistic.equals("meanNanos")) {
+                        return histogram.getMean();
+                    } else if (histogram != null && percentiles.containsKey(statistic)) {
+                        return histogram.getValueAtPercentile(percentiles.get(statistic));
+                    }
+                }
+            }
+            throw new AttributeNotFoundException(attribute);
+        }
+
+        @Override
+        public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+            throw new AttributeNotFoundException(attribute.getName() + " is read-only.");
+        }
+
+        @Override
+        public AttributeList getAttributes(String[] attributes) {
+            AttributeList list = new AttributeList();
+            for (String attribute : attributes) {
+                try {
+                    list.add(new Attribute(attribute, getAttribute(attribute)));
+                } catch (AttributeNotFoundException e) {
+                    // Unknown attributes are left out, as the DynamicMBean contract allows
+                }
+            }
+            return list;
+        }
+
+        @Override
+        public AttributeList setAttributes(AttributeList attributes) {
+            return new AttributeList();
+        }
+
+        @Override
+        public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+            if (actionName.equals("dump")) {
+                return CatalogMetrics.this.toString();
+            } else if (actionName.equals("reset")) {
+                reset();
+                return null;
+            }
+            throw new ReflectionException(new NoSuchMethodException(actionName));
+        }
+
+        @Override
+        public MBeanInfo getMBeanInfo() {
+            List<MBeanAttributeInfo> attributes = new ArrayList<>();
+            attributes.add(attribute("ItemCount", "int", "Number of items in the catalog"));
+            attributes.add(attribute("CategoryCount", "int", "Number of categories in the catalog"));
+            for (Operation operation : Operation.values()) {
+                String method = operation.methodName;
+                attributes.add(attribute(method + ".count", "long", "Calls to " + method));
+                if (operation.timed) {
+                    attributes.add(attribute(method + ".meanNanos", "double", "Mean latency of " + method));
+                    for (String percentile : List.of("p50Nanos", "p99Nanos", "p999Nanos")) {
+                        attributes.add(attribute(method + "." + percentile, "long", percentile + " latency of " + method));
+                    }
+                    attributes.add(attribute(method + ".maxNanos", "long", "Maximum latency of " + method));
+                }
+            }
+            MBeanOperationInfo[] operations = {
+                    new MBeanOperationInfo("dump", "Text table of all metrics", new MBeanParameterInfo[0], "java.lang.String", MBeanOperationInfo.INFO),
+                    new MBeanOperationInfo("reset", "Clear all counts and histograms", new MBeanParameterInfo[0], "void", MBeanOperationInfo.ACTION)
+            };
+            return new MBeanInfo(CatalogMetrics.class.getName(), "Catalog operation metrics",
+                    attributes.toArray(new MBeanAttributeInfo[0]), null, operations, null);
+        }
+
+        private MBeanAttributeInfo attribute(String name, String type, String description) {
+            return new MBeanAttributeInfo(name, type, description, true, false, false);
+        }
+    }
+}
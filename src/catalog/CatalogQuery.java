@@ -0,0 +1,412 @@
+package catalog;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * A query over a catalog's items, run with Catalog.query: filters, a sort order and one page of results.
+ *
+ * Each method refining the query returns a new query, so queries are immutable and can be shared between
+ * threads. Results are ordered by the sort key and then by item ID, which makes the order total, so pages
+ * never overlap or skip items. A page holds a cursor to the position after its last item, and the next page
+ * can be fetched with after(cursor) even if items have been added or removed in the meantime.
+ *
+ * A page of k items is selected with a bounded heap holding the best offset + k matches seen so far, so a
+ * query costs one pass over the candidate items and O(log k) per match, not a sort of every match.
+ * Large catalogs are scanned in parallel on the common ForkJoinPool, each task keeping its own heap.
+ */
+public final class CatalogQuery<T> {
+    // Items per fork/join task below which a range is scanned sequentially
+    private static final int SEQUENTIAL_THRESHOLD = 8192;
+    // Number of candidate items from which a query runs in parallel
+    private static final int PARALLEL_THRESHOLD = 4 * SEQUENTIAL_THRESHOLD;
+    // Version prefix of the cursor text, so cursors from other orderings or formats are rejected
+    private static final String CURSOR_VERSION = "1";
+
+    /**
+     * The attributes results can be sorted by. ID sorts by item ID alone, which follows the order items were created.
+     */
+    public enum SortKey {
+        TITLE(LibraryItem::getTitle),
+        AUTHOR(LibraryItem::getAuthor),
+        RELEASE_DATE(LibraryItem::getReleaseDate),
+        DATE_ADDED(LibraryItem::getDateAdded),
+        ID(item -> null);
+
+        private final Function<LibraryItem<?>, Comparable<?>> extractor;
+
+        SortKey(Function<LibraryItem<?>, Comparable<?>> extractor) {
+            this.extractor = extractor;
+        }
+    }
+
+    // Category the results are restricted to, if any; uses the category index
+    private final Optional<T> category;
+    // Conditions every result must meet, or null if there are none
+    private final Predicate<LibraryItem<T>> filter;
+    // Sort order
+    private final SortKey sortKey;
+    private final boolean descending;
+    // Number of matches to skip, and the maximum number of results
+    private final int offset;
+    private final int limit;
+    // Position after which results start, or null to start at the beginning
+    private final Position after;
+
+    /**
+     * A position in the sort order: the sort key value and ID of an item.
+     */
+    private static final class Position {
+        private final Comparable<?> value;
+        private final ItemId id;
+
+        private Position(Comparable<?> value, ItemId id) {
+            this.value = value;
+            this.id = id;
+        }
+    }
+
+    private CatalogQuery(Optional<T> category, Predicate<LibraryItem<T>> filter, SortKey sortKey, boolean descending,
+                         int offset, int limit, Position after) {
+        this.category = category;
+        this.filter = filter;
+        this.sortKey = sortKey;
+        this.descending = descending;
+        this.offset = offset;
+        this.limit = limit;
+        this.after = after;
+    }
+
+    /**
+     * Creates a query for every item, ordered by ID, with no limit.
+     * @return The query.
+     */
+    public static <T> CatalogQuery<T> create() {
+        return new CatalogQuery<>(Optional.empty(), null, SortKey.ID, false, 0, Integer.MAX_VALUE, null);
+    }
+
+    /**
+     * Restricts the results to items meeting a condition, in addition to any conditions already given.
+     * @param condition The condition results must meet.
+     * @return A new query with the condition added.
+     */
+    public CatalogQuery<T> where(Predicate<? super LibraryItem<T>> condition) {
+        Predicate<LibraryItem<T>> combined = filter == null ? condition::test : filter.and(condition);
+        return new CatalogQuery<>(category, combined, sortKey, descending, offset, limit, after);
+    }
+
+    /**
+     * Restricts the results to one category, read from the category index instead of scanning every item.
+     * @param category The category results must belong to.
+     * @return A new query for the category.
+     */
+    public CatalogQuery<T> inCategory(T category) {
+        return new CatalogQuery<>(Optional.of(category), filter, sortKey, descending, offset, limit, after);
+    }
+
+    /**
+     * Orders the results by a key, smallest first, then by item ID. Items without a value for the key come first.
+     * @param key The sort key.
+     * @return A new query with the order replaced.
+     */
+    public CatalogQuery<T> orderBy(SortKey key) {
+        return new CatalogQuery<>(category, filter, key, false, offset, limit, null);
+    }
+
+    /**
+     * Orders the results by a key, largest first, then by item ID, largest first. Items without a value come last.
+     * @param key The sort key.
+     * @return A new query with the order replaced.
+     */
+    public CatalogQuery<T> orderByDescending(SortKey key) {
+        return new CatalogQuery<>(category, filter, key, true, offset, limit, null);
+    }
+
+    /**
+     * Skips a number of matches before the first result.
+     * @param offset The number of matches to skip.
+     * @return A new query with the offset replaced.
+     * @throws IllegalArgumentException if the offset is negative.
+     */
+    public CatalogQuery<T> offset(int offset) {
+        if (offset < 0) {
+            throw new IllegalArgumentException("Offset must not be negative.");
+        }
+        return new CatalogQuery<>(category, filter, sortKey, descending, offset, limit, after);
+    }
+
+    /**
+     * Limits the number of results.
+     * @param limit The maximum number of results.
+     * @return A new query with the limit replaced.
+     * @throws IllegalArgumentException if the limit is not positive.
+     */
+    public CatalogQuery<T> limit(int limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit must be positive.");
+        }
+        return new CatalogQuery<>(category, filter, sortKey, descending, offset, limit, after);
+    }
+
+    /**
+     * Starts the results after the position a cursor marks, for fetching the next page. Replaces any offset.
+     * @param cursor A cursor from Page.getNextCursor of a query with the same order.
+     * @return A new query starting after the cursor.
+     * @throws IllegalArgumentException if the cursor is malformed or was made for a different order.
+     */
+    public CatalogQuery<T> after(String cursor) {
+        return new CatalogQuery<>(category, filter, sortKey, descending, 0, limit, decodeCursor(cursor));
+    }
+
+    /**
+     * Gets the category the query is restricted to.
+     * @return The category, or empty if the query covers every category.
+     */
+    Optional<T> getCategory() {
+        return category;
+    }
+
+    /**
+     * Runs the query over candidate items, in parallel if there are many.
+     * @param candidates The items to select from: the whole catalog, or the category's items if restricted.
+     * @return The page of results.
+     */
+    Page<T> run(Collection<LibraryItem<T>> candidates) {
+        Comparator<LibraryItem<T>> order = comparator();
+        int capacity = (int) Math.min((long) offset + limit, Integer.MAX_VALUE);
+        TopK<T> top;
+        if (candidates.size() < PARALLEL_THRESHOLD) {
+            top = new TopK<>(order, capacity);
+            for (LibraryItem<T> item : candidates) {
+                offerIfMatching(item, order, top);
+            }
+        } else {
+            // Tasks index the items directly, so they are copied into an array first
+            @SuppressWarnings({"unchecked", "rawtypes"})
+            LibraryItem<T>[] items = candidates.toArray(new LibraryItem[0]);
+            top = ForkJoinPool.commonPool().invoke(new SelectTask<>(this, order, capacity, items, 0, items.length));
+        }
+        List<LibraryItem<T>> ranked = top.sorted();
+        List<LibraryItem<T>> page = ranked.size() <= offset ? List.of() : ranked.subList(offset, ranked.size());
+        String nextCursor = null;
+        if (!page.isEmpty() && top.matches > (long) offset + page.size()) {
+            nextCursor = encodeCursor(page.get(page.size() - 1));
+        }
+        return new Page<>(List.copyOf(page), top.matches, nextCursor);
+    }
+
+    /**
+     * Adds an item to a selection if it is in the category, meets the conditions and comes after the cursor.
+     */
+    private void offerIfMatching(LibraryItem<T> item, Comparator<LibraryItem<T>> order, TopK<T> top) {
+        if (category.isPresent() && !Objects.equals(category.get(), item.getCategory())) {
+            return;
+        }
+        if (filter != null && !filter.test(item)) {
+            return;
+        }
+        if (after != null && compareToPosition(item) <= 0) {
+            return;
+        }
+        top.offer(item);
+    }
+
+    /**
+     * Builds the total order of the results: the sort key, then the item ID, both reversed if descending.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Comparator<LibraryItem<T>> comparator() {
+        Comparator<LibraryItem<T>> byId = Comparator.comparing(LibraryItem::getId);
+        Comparator<LibraryItem<T>> order = sortKey == SortKey.ID ? byId
+                : Comparator.comparing((LibraryItem<T> item) -> (Comparable) sortKey.extractor.apply(item),
+                                       Comparator.nullsFirst(Comparator.naturalOrder())).thenComparing(byId);
+        return descending ? order.reversed() : order;
+    }
+
+    /**
+     * Compares an item with the cursor position in the query's order.
+     * @return A positive number if the item comes after the position.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private int compareToPosition(LibraryItem<T> item) {
+        int result = 0;
+        if (sortKey != SortKey.ID) {
+            Comparable value = sortKey.extractor.apply(item);
+            result = value == null ? (after.value == null ? 0 : -1) : after.value == null ? 1 : value.compareTo(after.value);
+        }
+        if (result == 0) {
+            result = item.getId().compareTo(after.id);
+        }
+        return descending ? -result : result;
+    }
+
+    /**
+     * Encodes the position of an item as an opaque, URL-safe cursor.
+     */
+    private String encodeCursor(LibraryItem<T> item) {
+        Comparable<?> value = sortKey.extractor.apply(item);
+        String text = String.join("\n", CURSOR_VERSION, sortKey.name(), descending ? "d" : "a", item.getId().toString(),
+                                  value == null ? "-" : "+" + value);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a cursor made by encodeCursor, checking it was made for this query's order.
+     */
+    private Position decodeCursor(String cursor) {
+        String[] parts;
+        try {
+            parts = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8).split("\n", 5);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Malformed cursor.");
+        }
+        if (parts.length != 5 || !parts[0].equals(CURSOR_VERSION) || parts[4].isEmpty()) {
+            throw new IllegalArgumentException("Malformed cursor.");
+        }
+        if (!parts[1].equals(sortKey.name()) || !parts[2].equals(descending ? "d" : "a")) {
+            throw new IllegalArgumentException("Cursor was made for a different sort order.");
+        }
+        ItemId id = ItemId.tryParse(parts[3]);
+        if (id == null) {
+            throw new IllegalArgumentException("Malformed cursor.");
+        }
+        Comparable<?> value = null;
+        if (parts[4].charAt(0) == '+') {
+            String text = parts[4].substring(1);
+            try {
+                value = sortKey == SortKey.RELEASE_DATE || sortKey == SortKey.DATE_ADDED ? LocalDate.parse(text) : text;
+            } catch (RuntimeException e) {
+                throw new IllegalArgumentException("Malformed cursor.");
+            }
+        }
+        return new Position(value, id);
+    }
+
+    /**
+     * The best items seen so far, kept in a heap whose root is the worst of them.
+     */
+    private static final class TopK<T> {
+        private final Comparator<LibraryItem<T>> order;
+        private final int capacity;
+        private final PriorityQueue<LibraryItem<T>> heap;
+        // Number of matching items offered, including those not kept
+        private long matches;
+
+        private TopK(Comparator<LibraryItem<T>> order, int capacity) {
+            this.order = order;
+            this.capacity = capacity;
+            this.heap = new PriorityQueue<>(Math.min(capacity, 1024), order.reversed());
+        }
+
+        private void offer(LibraryItem<T> item) {
+            matches++;
+            if (heap.size() < capacity) {
+                heap.add(item);
+            } else if (order.compare(item, heap.peek()) < 0) {
+                heap.poll();
+                heap.add(item);
+            }
+        }
+
+        private TopK<T> merge(TopK<T> other) {
+            long otherMatches = other.matches;
+            for (LibraryItem<T> item : other.heap) {
+                offer(item);
+            }
+            // offer counted the other selection's kept items again
+            matches += otherMatches - other.heap.size();
+            return this;
+        }
+
+        private List<LibraryItem<T>> sorted() {
+            List<LibraryItem<T>> items = new ArrayList<>(heap);
+            items.sort(order);
+            return items;
+        }
+    }
+
+    /**
+     * Splits a range of items in half until it is small enough to scan directly, then merges the selections.
+     */
+    private static final class SelectTask<T> extends RecursiveTask<TopK<T>> {
+        // Tasks are never serialized, but RecursiveTask is Serializable
+        private static final long serialVersionUID = 1L;
+
+        private final CatalogQuery<T> query;
+        private final Comparator<LibraryItem<T>> order;
+        private final int capacity;
+        private final LibraryItem<T>[] items;
+        private final int from;
+        private final int to;
+
+        private SelectTask(CatalogQuery<T> query, Comparator<LibraryItem<T>> order, int capacity,
+                           LibraryItem<T>[] items, int from, int to) {
+            this.query = query;
+            this.order = order;
+            this.capacity = capacity;
+            this.items = items;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected TopK<T> compute() {
+            if (to - from <= SEQUENTIAL_THRESHOLD) {
+                TopK<T> top = new TopK<>(order, capacity);
+                for (int i = from; i < to; i++) {
+                    query.offerIfMatching(items[i], order, top);
+                }
+                return top;
+            }
+            int middle = (from + to) >>> 1;
+            SelectTask<T> left = new SelectTask<>(query, order, capacity, items, from, middle);
+            left.fork();
+            TopK<T> right = new SelectTask<>(query, order, capacity, items, middle, to).compute();
+            return left.join().merge(right);
+        }
+    }
+
+    /**
+     * One page of query results.
+     */
+    public static final class Page<T> {
+        private final List<LibraryItem<T>> items;
+        private final long matchCount;
+        private final String nextCursor;
+
+        private Page(List<LibraryItem<T>> items, long matchCount, String nextCursor) {
+            this.items = items;
+            this.matchCount = matchCount;
+            this.nextCursor = nextCursor;
+        }
+
+        /**
+         * Gets the results on this page.
+         * @return An unmodifiable list of the items, in query order.
+         */
+        public List<LibraryItem<T>> getItems() {
+            return items;
+        }
+
+        /**
+         * Gets the number of items matching the query, counted from the cursor if one was given.
+         * @return The number of matches, including those before the offset and after this page.
+         */
+        public long getMatchCount() {
+            return matchCount;
+        }
+
+        /**
+         * Gets a cursor for the page after this one, to pass to CatalogQuery.after.
+         * @return The cursor, or null if this is the last page.
+         */
+        public String getNextCursor() {
+            return nextCursor;
+        }
+    }
+}
@@ -0,0 +1,238 @@
+package catalog;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Renders catalog items as the fixed-width table used by Catalog.displayCatalog.
+ * Rows are padded by hand into a reusable buffer that is only handed to the output once it fills up,
+ * so a large dump costs a handful of writes rather than several formatted writes per row.
+ * A renderer reuses its buffer between calls and is therefore not thread-safe.
+ */
+public class CatalogRenderer {
+    // Column widths, in display order: category, title, author, release date, item ID, date added
+    private static final int[] COLUMN_WIDTHS = {17, 21, 21, 17, 36, 17};
+    // Table header titles, in display order
+    private static final String[] HEADERS = {"Category", "Title", "Author", "Release Date", "Item ID", "Date Added"};
+    // Separator line printed around the header and after every row, built once
+    private static final String SEPARATOR = buildSeparator();
+    // Default buffer size in characters
+    private static final int DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    // Buffer rows are rendered into before being written out
+    private final StringBuilder buffer;
+    // Scratch array used to hand the buffer to a Writer without copying it into a String
+    private final char[] chars;
+    // Buffer length at which the buffer is written out
+    private final int flushThreshold;
+
+    /**
+     * Creates a renderer with the default buffer size.
+     */
+    public CatalogRenderer() {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Creates a renderer with the given buffer size.
+     * @param bufferSize The number of characters buffered before writing to the output.
+     * @throws IllegalArgumentException if the buffer size is too small to hold a row.
+     */
+    public CatalogRenderer(int bufferSize) {
+        if (bufferSize < 2 * SEPARATOR.length()) {
+            throw new IllegalArgumentException("Buffer size must be at least " + (2 * SEPARATOR.length()) + " characters.");
+        }
+        // Leave headroom so a row of up to two separator widths that pushes past the threshold fits without growing
+        // the builder; a longer row, e.g. with a long title, still grows it and is drained with a plain append
+        this.buffer = new StringBuilder(bufferSize + 2 * SEPARATOR.length());
+        this.chars = new char[buffer.capacity()];
+        this.flushThreshold = bufferSize;
+    }
+
+    /**
+     * Renders the header and all the given items to an Appendable.
+     * @param items The items to render.
+     * @param out The destination of the table.
+     * @throws IOException if writing to the destination fails.
+     */
+    public <T> void render(Iterable<LibraryItem<T>> items, Appendable out) throws IOException {
+        renderPage(items.iterator(), 0, Long.MAX_VALUE, out);
+    }
+
+    /**
+     * Renders the header and all the given items to an OutputStream as UTF-8.
+     * The stream is flushed but not closed.
+     * @param items The items to render.
+     * @param out The destination of the table.
+     * @throws IOException if writing to the destination fails.
+     */
+    public <T> void render(Iterable<LibraryItem<T>> items, OutputStream out) throws IOException {
+        Writer writer = new OutputStreamWriter(out, StandardCharsets.UTF_8);
+        render(items, writer);
+        writer.flush();
+    }
+
+    /**
+     * Renders the header and one page of items, pulling items from the iterator only as they are needed.
+     * @param items The items to page through.
+     * @param offset The number of items to skip before the first rendered row.
+     * @param limit The maximum number of rows to render.
+     * @param out The destination of the table.
+     * @return The number of rows rendered.
+     * @throws IOException if writing to the destination fails.
+     */
+    public <T> long renderPage(Iterator<LibraryItem<T>> items, long offset, long limit, Appendable out) throws IOException {
+        buffer.setLength(0);
+        appendHeader();
+        for (long skipped = 0; skipped < offset && items.hasNext(); skipped++) {
+            items.next();
+        }
+        long rows = 0;
+        while (rows < limit && items.hasNext()) {
+            appendRow(items.next());
+            rows++;
+            if (buffer.length() >= flushThreshold) {
+                drain(out);
+            }
+        }
+        drain(out);
+        return rows;
+    }
+
+    /**
+     * Estimates the length of a rendered table, assuming no value overflows its column.
+     * @param rows The number of item rows in the table.
+     * @return The approximate number of characters in the table.
+     */
+    static long estimateLength(long rows) {
+        // The header and every row are each a line of the separator's length followed by a separator
+        return (2 * rows + 3) * SEPARATOR.length();
+    }
+
+    /**
+     * Appends the separator-wrapped header row to the buffer.
+     */
+    private void appendHeader() {
+        buffer.append(SEPARATOR);
+        for (int column = 0; column < HEADERS.length; column++) {
+            appendCell(HEADERS[column], COLUMN_WIDTHS[column]);
+        }
+        buffer.append('|').append(System.lineSeparator());
+        buffer.append(SEPARATOR);
+    }
+
+    /**
+     * Appends a single item row followed by a separator to the buffer.
+     * @param item The item to render.
+     */
+    private <T> void appendRow(LibraryItem<T> item) {
+        appendCell(String.valueOf(item.getCategory()), COLUMN_WIDTHS[0]);
+        appendCell(item.getTitle(), COLUMN_WIDTHS[1]);
+        appendCell(item.getAuthor(), COLUMN_WIDTHS[2]);
+        appendDateCell(item.getReleaseDate(), COLUMN_WIDTHS[3]);
+        appendIdCell(item.getId(), COLUMN_WIDTHS[4]);
+        appendDateCell(item.getDateAdded(), COLUMN_WIDTHS[5]);
+        buffer.append('|').append(System.lineSeparator());
+        buffer.append(SEPARATOR);
+    }
+
+    /**
+     * Appends a left-aligned cell padded to the column width. Longer values are not truncated.
+     * @param value The cell value.
+     * @param width The column width.
+     */
+    private void appendCell(String value, int width) {
+        if (value == null) {
+            value = "null";
+        }
+        buffer.append("| ").append(value);
+        pad(width - value.length());
+        buffer.append(' ');
+    }
+
+    /**
+     * Appends an item ID cell, formatting the ID straight into the buffer.
+     * @param id The ID to render.
+     * @param width The column width.
+     */
+    private void appendIdCell(ItemId id, int width) {
+        buffer.append("| ");
+        id.appendTo(buffer);
+        pad(width - ItemId.STRING_LENGTH);
+        buffer.append(' ');
+    }
+
+    /**
+     * Appends a date cell in YYYY-MM-DD form without going through LocalDate.toString.
+     * @param date The date to render.
+     * @param width The column width.
+     */
+    private void appendDateCell(LocalDate date, int width) {
+        if (date == null || date.getYear() < 0 || date.getYear() > 9999) {
+            appendCell(String.valueOf(date), width);
+            return;
+        }
+        buffer.append("| ");
+        appendDigits(date.getYear(), 4);
+        buffer.append('-');
+        appendDigits(date.getMonthValue(), 2);
+        buffer.append('-');
+        appendDigits(date.getDayOfMonth(), 2);
+        pad(width - 10);
+        buffer.append(' ');
+    }
+
+    /**
+     * Appends a non-negative number zero-padded to the given number of digits.
+     * @param value The number to append.
+     * @param digits The number of digits to write.
+     */
+    private void appendDigits(int value, int digits) {
+        for (int divisor = (int) Math.pow(10, digits - 1); divisor > 0; divisor /= 10) {
+            buffer.append((char) ('0' + (value / divisor) % 10));
+        }
+    }
+
+    /**
+     * Appends the given number of spaces to the buffer.
+     * @param count The number of spaces, ignored if not positive.
+     */
+    private void pad(int count) {
+        for (int i = 0; i < count; i++) {
+            buffer.append(' ');
+        }
+    }
+
+    /**
+     * Writes the buffer to the output and clears it.
+     * @param out The destination of the table.
+     * @throws IOException if writing to the destination fails.
+     */
+    private void drain(Appendable out) throws IOException {
+        int length = buffer.length();
+        if (length == 0) {
+            return;
+        }
+        if (out instanceof Writer && length <= chars.length) {
+            buffer.getChars(0, length, chars, 0);
+            ((Writer) out).write(chars, 0, length);
+        } else {
+            out.append(buffer);
+        }
+        buffer.setLength(0);
+    }
+
+    /**
+     * Builds the separator line from the column widths.
+     * @return The separator line, including the line terminator.
+     */
+    private static String buildSeparator() {
+        StringBuilder separator = new StringBuilder("+");
+        for (int width : COLUMN_WIDTHS) {
+            separator.append("-".repeat(width + 2)).append('+');
+        }
+        return separator.append(System.lineSeparator()).toString();
+    }
+}
@@ -0,0 +1,202 @@
+package catalog;
+
+import java.io.*;
+import java.net.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Serves one catalog to many local clients over TCP, using the CommandProcessor line protocol.
+ *
+ * Each connection is handled by its own thread from a cached pool, with its own CommandProcessor. Requests
+ * may be pipelined: a client can send many lines without waiting, and the responses come back in order.
+ * Responses are buffered and only flushed once the connection has no more requests waiting, so a pipelined
+ * burst is answered with a few large writes. Adds from a burst are applied as one batch before the responses
+ * are sent. The processor writes an add's "ok" only after its batch has been applied, so even when a long burst
+ * fills the write buffer and part of it leaves early, once a client has read "ok" for an add, every other
+ * client can see the item.
+ *
+ * The catalog and its listeners are shared by all connection threads, so the catalog should be a
+ * ConcurrentCatalog.
+ */
+public class CatalogServer<T> implements Closeable {
+    // Size of the per-connection read and write buffers
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    // The catalog shared by every connection
+    private final Catalog<T> catalog;
+    // Converts category fields to the catalog's category type
+    private final Function<String, T> categoryParser;
+    // Index used by query
+    private final SearchIndex<T> searchIndex;
+    // Threads serving the connections, one per open connection
+    private final ExecutorService connectionThreads;
+    // Open client connections, closed along with the server
+    private final Set<Socket> connections = ConcurrentHashMap.newKeySet();
+    // Number of connections accepted so far
+    private final AtomicInteger accepted = new AtomicInteger();
+    // The listening socket, once started
+    private ServerSocket serverSocket;
+    // Thread accepting new connections, once started
+    private Thread acceptThread;
+
+    /**
+     * Creates a server for a catalog. It does not listen until started.
+     * @param catalog The catalog to serve, normally a ConcurrentCatalog.
+     * @param categoryParser A function converting category fields to the catalog's category type.
+     * @param searchIndex An index attached to the catalog, used by query.
+     */
+    public CatalogServer(Catalog<T> catalog, Function<String, T> categoryParser, SearchIndex<T> searchIndex) {
+        this.catalog = catalog;
+        this.categoryParser = categoryParser;
+        this.searchIndex = searchIndex;
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.connectionThreads = Executors.newCachedThreadPool(task -> {
+            Thread thread = new Thread(task, "catalog-connection-" + threadNumber.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Starts listening and accepting connections on a background thread.
+     * @param address The address to listen on, e.g. new InetSocketAddress(InetAddress.getLoopbackAddress(), 7070).
+     *                Port 0 picks a free port.
+     * @throws IOException if the address cannot be bound.
+     * @throws IllegalStateException if the server has already been started.
+     */
+    public synchronized void start(InetSocketAddress address) throws IOException {
+        if (serverSocket != null) {
+            throw new IllegalStateException("Server already started.");
+        }
+        serverSocket = new ServerSocket();
+        serverSocket.setReuseAddress(true);
+        serverSocket.bind(address, 1024);
+        acceptThread = new Thread(this::acceptConnections, "catalog-accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+    }
+
+    /**
+     * Gets the port the server listens on.
+     * @return The local port.
+     * @throws IllegalStateException if the server has not been started.
+     */
+    public synchronized int getPort() {
+        if (serverSocket == null) {
+            throw new IllegalStateException("Server not started.");
+        }
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Gets the number of connections accepted since the server started.
+     * @return The number of connections, including closed ones.
+     */
+    public int getAcceptedConnections() {
+        return accepted.get();
+    }
+
+    /**
+     * Waits until the server is closed.
+     * @throws InterruptedException if the waiting thread is interrupted.
+     */
+    public void awaitTermination() throws InterruptedException {
+        Thread thread;
+        synchronized (this) {
+            thread = acceptThread;
+        }
+        if (thread != null) {
+            thread.join();
+        }
+    }
+
+    /**
+     * Stops accepting connections, closes the open ones and waits for their threads to finish.
+     * When it returns, every add the server has read has been applied, so the catalog can be saved.
+     * @throws IOException if the listening socket cannot be closed, or the wait is interrupted.
+     */
+    @Override
+    public void close() throws IOException {
+        ServerSocket socket;
+        Thread thread;
+        synchronized (this) {
+            socket = serverSocket;
+            thread = acceptThread;
+        }
+        if (socket != null) {
+            socket.close();
+        }
+        try {
+            // Once the accept thread has stopped, no connection can be added after the ones closed below
+            if (thread != null) {
+                thread.join();
+            }
+            for (Socket connection : connections) {
+                connection.close();
+            }
+            connectionThreads.shutdown();
+            connectionThreads.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for connections to finish.");
+        }
+    }
+
+    /**
+     * Body of the accept thread: hands each new connection to a thread of its own until the server is closed.
+     */
+    private void acceptConnections() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket connection = serverSocket.accept();
+                connection.setTcpNoDelay(true);
+                connections.add(connection);
+                accepted.incrementAndGet();
+                connectionThreads.execute(() -> serve(connection));
+            } catch (IOException | RejectedExecutionException e) {
+                // The server socket was closed, or the server is shutting down
+            }
+        }
+    }
+
+    /**
+     * Reads and answers the requests of one connection until the client disconnects or the server is closed.
+     * Adds already read are applied either way.
+     * @param connection The client connection.
+     */
+    private void serve(Socket connection) {
+        CommandProcessor<T> processor = new CommandProcessor<>(catalog, categoryParser, searchIndex);
+        try (Socket socket = connection;
+             BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8), BUFFER_SIZE);
+             Writer out = new BufferedWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), BUFFER_SIZE)) {
+            long lineNumber = 0;
+            String line;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                if (!line.isEmpty() && line.charAt(0) != '#') {
+                    processor.execute(line, lineNumber, out);
+                }
+                // Answer once the pipelined requests received so far have all been handled
+                if (!in.ready()) {
+                    processor.flush(out);
+                    out.flush();
+                }
+            }
+            processor.flush(out);
+        } catch (IOException e) {
+            // The client went away or the server was closed; there is nobody left to answer, but adds already
+            // read are still applied so none is lost when the server shuts down
+            try {
+                processor.flush(Writer.nullWriter());
+            } catch (IOException ignored) {
+                // A null writer never fails
+            }
+        } finally {
+            connections.remove(connection);
+        }
+    }
+}
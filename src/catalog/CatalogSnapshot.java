@@ -0,0 +1,328 @@
+package catalog;
+
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * Saves a whole Catalog to a compact binary snapshot file and loads it back.
+ *
+ * The file starts with a fixed 32-byte header (magic, version, item, category and author counts),
+ * followed by the category dictionary, the author dictionary and one record per item.
+ * Dictionary entries are a length-prefixed byte string. An item record is its two ID longs,
+ * category and author dictionary indexes, release date and date added as epoch days, then its
+ * length-prefixed UTF-8 title. All numbers are big-endian.
+ *
+ * Snapshots are written to a temporary file and moved into place, so a crash never leaves a half-written
+ * snapshot behind. Loading maps the file into memory rather than reading it through streams.
+ */
+public class CatalogSnapshot<T> {
+    // Marks the start of a snapshot file ("LCAT")
+    private static final int MAGIC = 0x4C434154;
+    // Version of the file layout
+    private static final int VERSION = 1;
+    // Size of the fixed header in bytes
+    static final int HEADER_SIZE = 32;
+    // Size of an item record without its length-prefixed title
+    private static final int RECORD_SIZE = 8 + 8 + 4 + 4 + 4 + 4;
+    // Epoch day written for a missing date
+    static final int NO_DATE = Integer.MIN_VALUE;
+    // Size of the write buffer in bytes
+    private static final int WRITE_BUFFER_SIZE = 1 << 20;
+    // Largest region mapped at once while loading
+    private static final long MAX_MAPPED_WINDOW = 1L << 30;
+
+    // Converts categories to and from bytes
+    private final CategoryCodec<T> codec;
+
+    /**
+     * Creates a snapshot reader and writer.
+     * @param codec The codec used for categories.
+     */
+    public CatalogSnapshot(CategoryCodec<T> codec) {
+        this.codec = codec;
+    }
+
+    /**
+     * Writes all items of a catalog to a snapshot file, replacing any existing file.
+     * @param catalog The catalog to save.
+     * @param path The snapshot file.
+     * @throws IOException if the file cannot be written.
+     */
+    public void save(Catalog<T> catalog, Path path) throws IOException {
+        // Copy the items once, so the header count, dictionaries and records agree even if the catalog is changing
+        List<LibraryItem<T>> items = new ArrayList<>(catalog.getItems());
+        // Build the dictionaries first so records can refer to entries by index
+        Map<T, Integer> categories = new LinkedHashMap<>();
+        Map<String, Integer> authors = new LinkedHashMap<>();
+        for (LibraryItem<T> item : items) {
+            categories.putIfAbsent(item.getCategory(), categories.size());
+            authors.putIfAbsent(item.getAuthor(), authors.size());
+        }
+
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ChannelWriter out = new ChannelWriter(channel);
+            out.ensure(HEADER_SIZE);
+            out.buffer.putInt(MAGIC).putInt(VERSION).putLong(items.size()).putInt(categories.size()).putInt(authors.size()).putLong(0);
+            for (T category : categories.keySet()) {
+                out.putBytes(codec.encode(category));
+            }
+            for (String author : authors.keySet()) {
+                out.putBytes(author.getBytes(StandardCharsets.UTF_8));
+            }
+            for (LibraryItem<T> item : items) {
+                out.ensure(RECORD_SIZE);
+                out.buffer.putLong(item.getId().getMostSignificantBits())
+                        .putLong(item.getId().getLeastSignificantBits())
+                        .putInt(categories.get(item.getCategory()))
+                        .putInt(authors.get(item.getAuthor()))
+                        .putInt(toEpochDay(item.getReleaseDate()))
+                        .putInt(toEpochDay(item.getDateAdded()));
+                out.putBytes(item.getTitle().getBytes(StandardCharsets.UTF_8));
+            }
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Loads the items of a snapshot file into a catalog.
+     * @param path The snapshot file.
+     * @param catalog The catalog to add the items to.
+     * @return The number of items loaded.
+     * @throws IOException if the file cannot be read or is not a valid snapshot.
+     */
+    public int load(Path path, Catalog<T> catalog) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedReader in = new MappedReader(channel);
+            ByteBuffer header = in.window(HEADER_SIZE);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a catalog snapshot: " + path);
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported snapshot version " + version + ": " + path);
+            }
+            long itemCount = header.getLong();
+            int categoryCount = header.getInt();
+            int authorCount = header.getInt();
+            header.getLong(); // Reserved
+            // Every entry takes at least its length prefix, so counts larger than the file allows are corrupt
+            if (categoryCount < 0 || authorCount < 0 || (long) categoryCount + authorCount > in.remaining() / 4) {
+                throw new IOException("Corrupt snapshot dictionary counts " + categoryCount + " and " + authorCount + ": " + path);
+            }
+            if (itemCount > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot holds too many items: " + itemCount);
+            }
+
+            List<T> categories = new ArrayList<>(categoryCount);
+            for (int i = 0; i < categoryCount; i++) {
+                categories.add(codec.decode(in.getBytes()));
+            }
+            String[] authors = new String[authorCount];
+            for (int i = 0; i < authorCount; i++) {
+                authors[i] = in.getString();
+            }
+
+            if (itemCount < 0 || itemCount > in.remaining() / (RECORD_SIZE + 4)) {
+                throw new IOException("Corrupt snapshot item count " + itemCount + ": " + path);
+            }
+            List<LibraryItem<T>> items = new ArrayList<>((int) itemCount);
+            for (long i = 0; i < itemCount; i++) {
+                ByteBuffer record = in.window(RECORD_SIZE);
+                ItemId id = new ItemId(record.getLong(), record.getLong());
+                T category = categories.get(record.getInt());
+                String author = authors[record.getInt()];
+                LocalDate releaseDate = fromEpochDay(record.getInt());
+                LocalDate dateAdded = fromEpochDay(record.getInt());
+                items.add(new LibraryItem<>(id, in.getString(), author, category, releaseDate, dateAdded));
+            }
+            catalog.addAll(items);
+            return items.size();
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | DateTimeException e) {
+            throw new IOException("Corrupt catalog snapshot: " + path, e);
+        }
+    }
+
+    /**
+     * Converts a date to its epoch day for storage.
+     * @param date The date, which may be null.
+     * @return The epoch day, or NO_DATE for null.
+     * @throws IllegalArgumentException if the date is too far from 1970 to store.
+     */
+    static int toEpochDay(LocalDate date) {
+        if (date == null) {
+            return NO_DATE;
+        }
+        long epochDay = date.toEpochDay();
+        if (epochDay <= NO_DATE || epochDay > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Date out of range for a snapshot: " + date);
+        }
+        return (int) epochDay;
+    }
+
+    /**
+     * Converts a stored epoch day back to a date.
+     * @param epochDay The stored epoch day.
+     * @return The date, or null for NO_DATE.
+     */
+    static LocalDate fromEpochDay(int epochDay) {
+        return epochDay == NO_DATE ? null : LocalDate.ofEpochDay(epochDay);
+    }
+
+    /**
+     * Writes to a channel through a reusable heap buffer.
+     */
+    private static class ChannelWriter {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocate(WRITE_BUFFER_SIZE);
+
+        ChannelWriter(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        /**
+         * Makes room in the buffer for the given number of bytes.
+         * @param bytes The number of bytes about to be written, at most the buffer size.
+         * @throws IOException if writing to the channel fails.
+         */
+        void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes) {
+                flush();
+            }
+        }
+
+        /**
+         * Writes a length-prefixed byte string.
+         * @param bytes The bytes to write.
+         * @throws IOException if writing to the channel fails.
+         */
+        void putBytes(byte[] bytes) throws IOException {
+            ensure(4);
+            buffer.putInt(bytes.length);
+            if (bytes.length > buffer.capacity()) {
+                flush();
+                writeFully(ByteBuffer.wrap(bytes));
+                return;
+            }
+            ensure(bytes.length);
+            buffer.put(bytes);
+        }
+
+        /**
+         * Writes out and clears the buffer.
+         * @throws IOException if writing to the channel fails.
+         */
+        void flush() throws IOException {
+            buffer.flip();
+            writeFully(buffer);
+            buffer.clear();
+        }
+
+        private void writeFully(ByteBuffer source) throws IOException {
+            while (source.hasRemaining()) {
+                channel.write(source);
+            }
+        }
+    }
+
+    /**
+     * Reads a file through memory-mapped windows, remapping whenever a read would run past the current window.
+     */
+    private static class MappedReader {
+        private final FileChannel channel;
+        private final long fileSize;
+        private MappedByteBuffer mapped;
+        // File offset of the start of the current window
+        private long windowStart;
+        // Scratch space for decoding strings
+        private byte[] scratch = new byte[256];
+
+        MappedReader(FileChannel channel) throws IOException {
+            this.channel = channel;
+            this.fileSize = channel.size();
+            map(0);
+        }
+
+        /**
+         * Returns the mapped buffer positioned at the next unread byte, with at least the given number of bytes available.
+         * @param bytes The number of bytes about to be read.
+         * @return The mapped buffer.
+         * @throws IOException if mapping fails or the file is too short.
+         */
+        ByteBuffer window(int bytes) throws IOException {
+            if (mapped.remaining() < bytes) {
+                long position = windowStart + mapped.position();
+                if (position + bytes > fileSize) {
+                    throw new EOFException("Unexpected end of snapshot");
+                }
+                map(position);
+            }
+            return mapped;
+        }
+
+        /**
+         * Gets the number of bytes left to read in the file.
+         * @return The number of unread bytes.
+         */
+        long remaining() {
+            return fileSize - windowStart - mapped.position();
+        }
+
+        /**
+         * Reads a length-prefixed byte string.
+         * @return The bytes.
+         * @throws IOException if mapping fails or the file is too short.
+         */
+        byte[] getBytes() throws IOException {
+            int length = getLength();
+            byte[] bytes = new byte[length];
+            readInto(bytes, length);
+            return bytes;
+        }
+
+        /**
+         * Reads a length-prefixed UTF-8 string.
+         * @return The string.
+         * @throws IOException if mapping fails or the file is too short.
+         */
+        String getString() throws IOException {
+            int length = getLength();
+            if (length > scratch.length) {
+                scratch = new byte[(int) Math.min(MAX_MAPPED_WINDOW, Math.max(length, scratch.length * 2L))];
+            }
+            readInto(scratch, length);
+            return new String(scratch, 0, length, StandardCharsets.UTF_8);
+        }
+
+        /**
+         * Reads the length prefix of an entry, checking it before anything is allocated for the entry.
+         * @return The length, no more than the bytes left in the file.
+         * @throws IOException if mapping fails, the file is too short or the length is corrupt.
+         */
+        private int getLength() throws IOException {
+            int length = window(4).getInt();
+            if (length < 0 || length > remaining() || length > MAX_MAPPED_WINDOW) {
+                throw new IOException("Corrupt snapshot entry length " + length);
+            }
+            return length;
+        }
+
+        private void readInto(byte[] target, int length) throws IOException {
+            window(length).get(target, 0, length);
+        }
+
+        private void map(long position) throws IOException {
+            long size = Math.min(MAX_MAPPED_WINDOW, fileSize - position);
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+            windowStart = position;
+        }
+    }
+}
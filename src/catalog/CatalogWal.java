@@ -0,0 +1,439 @@
+package catalog;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.zip.CRC32;
+
+/**
+ * An append-only write-ahead log of catalog changes, used to keep changes made since the last snapshot.
+ *
+ * Attached to a catalog as its CatalogJournal, it records every add and remove before the catalog applies it,
+ * and only returns once the record is on disk, so a change is never visible before it is durable and a failed
+ * write leaves the catalog unchanged. Each item's records are written in the order its changes are applied.
+ * Records from concurrent callers are gathered by a background committer thread and written with a single
+ * fsync (group commit). The commit delay sets how long the committer waits for more records before syncing:
+ * zero gives the lowest latency, a few milliseconds gives fewer, larger syncs.
+ *
+ * Each record is framed as its payload length, a CRC32 of the payload, and the payload itself, so a record
+ * torn by a crash is detected and dropped on replay. Once the log grows past the compaction threshold it is
+ * folded into the snapshot file and truncated.
+ */
+public class CatalogWal<T> implements CatalogJournal<T>, Closeable {
+    // Record type markers
+    private static final byte ADD = 1;
+    private static final byte REMOVE = 2;
+    // Size of the length and checksum that precede each payload
+    private static final int FRAME_HEADER_SIZE = 8;
+
+    // Log file and its open channel
+    private final Path logPath;
+    private final FileChannel channel;
+    // Converts categories to and from bytes
+    private final CategoryCodec<T> codec;
+    // How long the committer waits for more records before syncing
+    private final long commitDelayNanos;
+    // Snapshot file the log is folded into, and the log size that triggers it (0 disables it)
+    private final Path snapshotPath;
+    private final long compactionThreshold;
+    // Catalog this log is attached to
+    private Catalog<T> catalog;
+
+    // Guards the fields below
+    private final ReentrantLock lock = new ReentrantLock();
+    // Signalled when records are waiting to be written, or the log is closing
+    private final Condition pendingAvailable = lock.newCondition();
+    // Signalled when records become durable, or a write fails
+    private final Condition stateChanged = lock.newCondition();
+    // Framed records waiting to be written
+    private ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    // Sequence number of the last appended record, and of the last record known to be on disk
+    private long appendedSequence;
+    private long durableSequence;
+    private boolean closed;
+    // First write failure, reported to every later caller
+    private IOException failure;
+    // Writes and syncs pending records
+    private final Thread committer;
+
+    /**
+     * Opens or creates a log file.
+     * @param logPath The log file.
+     * @param codec The codec used for categories.
+     * @param commitDelay How long to wait for more records before each sync.
+     * @param snapshotPath The snapshot file the log is folded into.
+     * @param compactionThreshold The log size in bytes at which it is folded into the snapshot, or 0 to only compact on request.
+     * @throws IOException if the log file cannot be opened.
+     */
+    public CatalogWal(Path logPath, CategoryCodec<T> codec, Duration commitDelay, Path snapshotPath, long compactionThreshold) throws IOException {
+        this.logPath = logPath;
+        this.codec = codec;
+        this.commitDelayNanos = commitDelay.toNanos();
+        this.snapshotPath = snapshotPath;
+        this.compactionThreshold = compactionThreshold;
+        this.channel = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.committer = new Thread(this::runCommitter, "catalog-wal-committer");
+        committer.setDaemon(true);
+        committer.start();
+    }
+
+    /**
+     * Replays the log into a catalog and then starts logging its changes.
+     * The catalog should already hold the contents of the snapshot the log was started from.
+     * @param catalog The catalog to recover and log.
+     * @return The number of records replayed.
+     * @throws IOException if the log cannot be read.
+     */
+    public int attach(Catalog<T> catalog) throws IOException {
+        int replayed = replay(catalog);
+        this.catalog = catalog;
+        catalog.setJournal(this);
+        return replayed;
+    }
+
+    /**
+     * Gets the current size of the log file.
+     * @return The log size in bytes.
+     * @throws IOException if the size cannot be read.
+     */
+    public long size() throws IOException {
+        return channel.size();
+    }
+
+    @Override
+    public void beforeAdd(Collection<LibraryItem<T>> items) {
+        if (items.isEmpty()) {
+            return;
+        }
+        List<byte[]> records = new ArrayList<>(items.size());
+        for (LibraryItem<T> item : items) {
+            records.add(encodeAdd(item));
+        }
+        append(records);
+    }
+
+    @Override
+    public void beforeRemove(LibraryItem<T> item) {
+        append(Collections.singletonList(encodeRemove(item.getId())));
+    }
+
+    /**
+     * Compacts the log once it has grown past the compaction threshold.
+     * @throws UncheckedIOException if compaction fails.
+     */
+    @Override
+    public void changeApplied() {
+        try {
+            if (compactionThreshold > 0 && channel.size() >= compactionThreshold) {
+                compact(true);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Writes the attached catalog to the snapshot file and empties the log.
+     * The catalog's writers are blocked until the snapshot is complete, so the snapshot holds exactly the
+     * changes in the log. Must not be called from a listener of the catalog, which already holds a write lock.
+     * @throws IOException if the snapshot cannot be written or the log cannot be truncated.
+     */
+    public void compact() throws IOException {
+        compact(false);
+    }
+
+    /**
+     * Folds the log into the snapshot file, optionally only if it is still over the compaction threshold
+     * once any compaction already in progress has finished.
+     * @param onlyIfOverThreshold true to skip compaction when the log is below the threshold.
+     * @throws IOException if the snapshot cannot be written or the log cannot be truncated.
+     */
+    private void compact(boolean onlyIfOverThreshold) throws IOException {
+        if (catalog == null) {
+            throw new IllegalStateException("The log is not attached to a catalog.");
+        }
+        // Every change is logged and applied under a write lock, so with all of them held the catalog
+        // holds exactly the changes appended so far, and no more can be appended
+        catalog.lockAllWrites();
+        try {
+            lock.lock();
+            try {
+                if (onlyIfOverThreshold && channel.size() < compactionThreshold) {
+                    return;
+                }
+                // Everything already appended must be on disk before the log can be dropped
+                while (durableSequence < appendedSequence && failure == null) {
+                    stateChanged.awaitUninterruptibly();
+                }
+                throwIfFailed();
+                new CatalogSnapshot<>(codec).save(catalog, snapshotPath);
+                synchronized (channel) {
+                    channel.truncate(0);
+                    channel.force(true);
+                }
+            } finally {
+                lock.unlock();
+            }
+        } finally {
+            catalog.unlockAllWrites();
+        }
+    }
+
+    /**
+     * Writes any pending records, stops the committer and closes the log file.
+     * @throws IOException if closing the file fails.
+     */
+    @Override
+    public void close() throws IOException {
+        lock.lock();
+        try {
+            closed = true;
+            pendingAvailable.signalAll();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            committer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (catalog != null && catalog.getJournal() == this) {
+            catalog.setJournal(null);
+        }
+        channel.close();
+    }
+
+    /**
+     * Appends framed records and waits until they are durable.
+     * @param records The record payloads.
+     * @throws UncheckedIOException if the log cannot be written.
+     */
+    private void append(List<byte[]> records) {
+        long sequence;
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("The log is closed.");
+            }
+            throwIfFailed();
+            for (byte[] record : records) {
+                writeFrame(pending, record);
+            }
+            sequence = appendedSequence += records.size();
+            pendingAvailable.signal();
+            while (durableSequence < sequence && failure == null) {
+                stateChanged.awaitUninterruptibly();
+            }
+            throwIfFailed();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Body of the committer thread: repeatedly takes all pending records, writes them and syncs once.
+     */
+    private void runCommitter() {
+        while (true) {
+            ByteArrayOutputStream batch;
+            long batchSequence;
+            lock.lock();
+            try {
+                while (pending.size() == 0 && !closed) {
+                    pendingAvailable.awaitUninterruptibly();
+                }
+                if (pending.size() == 0) {
+                    return; // Closed with nothing left to write
+                }
+                if (commitDelayNanos > 0 && !closed) {
+                    // Give other callers a chance to join this sync
+                    long remaining = commitDelayNanos;
+                    while (remaining > 0 && !closed) {
+                        try {
+                            remaining = pendingAvailable.awaitNanos(remaining);
+                        } catch (InterruptedException e) {
+                            break;
+                        }
+                    }
+                }
+                batch = pending;
+                batchSequence = appendedSequence;
+                pending = new ByteArrayOutputStream(Math.max(32, batch.size()));
+            } finally {
+                lock.unlock();
+            }
+
+            IOException error = null;
+            try {
+                synchronized (channel) {
+                    ByteBuffer buffer = ByteBuffer.wrap(batch.toByteArray());
+                    long position = channel.size();
+                    while (buffer.hasRemaining()) {
+                        position += channel.write(buffer, position);
+                    }
+                    channel.force(false);
+                }
+            } catch (IOException e) {
+                error = e;
+            }
+
+            lock.lock();
+            try {
+                if (error != null && failure == null) {
+                    failure = error;
+                } else if (error == null) {
+                    durableSequence = batchSequence;
+                }
+                stateChanged.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Applies every intact record in the log to a catalog, then cuts off any torn record at the end.
+     * @param target The catalog to apply the records to.
+     * @return The number of records applied.
+     * @throws IOException if the log cannot be read.
+     */
+    private int replay(Catalog<T> target) throws IOException {
+        int applied = 0;
+        long validLength = 0;
+        CRC32 crc = new CRC32();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(logPath), 1 << 16))) {
+            while (true) {
+                int length;
+                int checksum;
+                byte[] payload;
+                try {
+                    length = in.readInt();
+                    checksum = in.readInt();
+                    if (length <= 0) {
+                        break;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                } catch (EOFException e) {
+                    break;
+                }
+                crc.reset();
+                crc.update(payload);
+                if ((int) crc.getValue() != checksum) {
+                    break;
+                }
+                apply(payload, target);
+                applied++;
+                validLength += FRAME_HEADER_SIZE + length;
+            }
+        }
+        synchronized (channel) {
+            if (channel.size() > validLength) {
+                channel.truncate(validLength);
+                channel.force(true);
+            }
+        }
+        return applied;
+    }
+
+    /**
+     * Applies a single record to a catalog. Replaying is idempotent: adds replace, and removes of missing items are ignored.
+     * @param payload The record payload.
+     * @param target The catalog to apply the record to.
+     * @throws IOException if the record is malformed.
+     */
+    private void apply(byte[] payload, Catalog<T> target) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte type = in.readByte();
+        ItemId id = new ItemId(in.readLong(), in.readLong());
+        if (type == REMOVE) {
+            if (target.hasItem(id)) {
+                target.removeItem(id);
+            }
+            return;
+        }
+        if (type != ADD) {
+            throw new IOException("Unknown log record type " + type + " in " + logPath);
+        }
+        LocalDate releaseDate = CatalogSnapshot.fromEpochDay(in.readInt());
+        LocalDate dateAdded = CatalogSnapshot.fromEpochDay(in.readInt());
+        T category = codec.decode(readBytes(in));
+        String author = new String(readBytes(in), StandardCharsets.UTF_8);
+        String title = new String(readBytes(in), StandardCharsets.UTF_8);
+        target.addItem(new LibraryItem<>(id, title, author, category, releaseDate, dateAdded));
+    }
+
+    /**
+     * Encodes an add record.
+     * @param item The added item.
+     * @return The record payload.
+     */
+    private byte[] encodeAdd(LibraryItem<T> item) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeByte(ADD);
+            out.writeLong(item.getId().getMostSignificantBits());
+            out.writeLong(item.getId().getLeastSignificantBits());
+            out.writeInt(CatalogSnapshot.toEpochDay(item.getReleaseDate()));
+            out.writeInt(CatalogSnapshot.toEpochDay(item.getDateAdded()));
+            writeBytes(out, codec.encode(item.getCategory()));
+            writeBytes(out, item.getAuthor().getBytes(StandardCharsets.UTF_8));
+            writeBytes(out, item.getTitle().getBytes(StandardCharsets.UTF_8));
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Not thrown by in-memory streams
+        }
+    }
+
+    /**
+     * Encodes a remove record.
+     * @param id The ID of the removed item.
+     * @return The record payload.
+     */
+    private static byte[] encodeRemove(ItemId id) {
+        return ByteBuffer.allocate(17)
+                .put(REMOVE)
+                .putLong(id.getMostSignificantBits())
+                .putLong(id.getLeastSignificantBits())
+                .array();
+    }
+
+    /**
+     * Writes a payload preceded by its length and checksum.
+     * @param out The destination.
+     * @param payload The record payload.
+     */
+    private static void writeFrame(ByteArrayOutputStream out, byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        out.writeBytes(ByteBuffer.allocate(FRAME_HEADER_SIZE).putInt(payload.length).putInt((int) crc.getValue()).array());
+        out.writeBytes(payload);
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] bytes) throws IOException {
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    private void throwIfFailed() throws IOException {
+        if (failure != null) {
+            throw new IOException("Write-ahead log " + logPath + " failed", failure);
+        }
+    }
+}
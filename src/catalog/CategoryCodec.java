@@ -0,0 +1,53 @@
+package catalog;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.Function;
+
+/**
+ * Converts catalog categories to and from bytes for the binary snapshot and log files.
+ * Categories are dictionary-encoded, so each distinct category is only encoded once per file.
+ */
+public interface CategoryCodec<T> {
+
+    /**
+     * Encodes a category.
+     * @param category The category to encode.
+     * @return The encoded bytes.
+     */
+    byte[] encode(T category);
+
+    /**
+     * Decodes a category.
+     * @param bytes The bytes produced by encode.
+     * @return The decoded category.
+     */
+    T decode(byte[] bytes);
+
+    /**
+     * A codec for String categories, stored as UTF-8.
+     * @return The codec.
+     */
+    static CategoryCodec<String> utf8() {
+        return of(category -> category, text -> text);
+    }
+
+    /**
+     * A codec for categories with a text form, such as enums, stored as UTF-8.
+     * @param toText Converts a category to its text form.
+     * @param fromText Parses the text form back into a category.
+     * @return The codec.
+     */
+    static <T> CategoryCodec<T> of(Function<T, String> toText, Function<String, T> fromText) {
+        return new CategoryCodec<T>() {
+            @Override
+            public byte[] encode(T category) {
+                return toText.apply(category).getBytes(StandardCharsets.UTF_8);
+            }
+
+            @Override
+            public T decode(byte[] bytes) {
+                return fromText.apply(new String(bytes, StandardCharsets.UTF_8));
+            }
+        };
+    }
+}
@@ -0,0 +1,97 @@
+package catalog;
+
+import java.util.*;
+
+/**
+ * The category index entry of one category in a catalog backed by a ScannableStore: a count of the
+ * category's items, and a view of them that scans the store. put and remove only adjust the count,
+ * as the store already holds the items, so the index holds no items of its own.
+ */
+class CategoryCountView<T> extends AbstractMap<ItemId, LibraryItem<T>> {
+    // The store holding the items
+    private final ScannableStore<T> store;
+    // Dictionary code of the category, set by the first put
+    private int code = ScannableStore.NULL_CODE;
+    // Number of items in the category
+    private int count;
+
+    /**
+     * Creates an empty view.
+     * @param store The store holding the items.
+     */
+    CategoryCountView(ScannableStore<T> store) {
+        this.store = store;
+    }
+
+    @Override
+    public LibraryItem<T> put(ItemId key, LibraryItem<T> value) {
+        if (count == 0) {
+            code = store.encodeCategory(value.getCategory());
+        }
+        count++;
+        return null;
+    }
+
+    @Override
+    public LibraryItem<T> remove(Object key) {
+        count--;
+        return null;
+    }
+
+    @Override
+    public int size() {
+        return count;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return store.hasCategory(key, code);
+    }
+
+    @Override
+    public LibraryItem<T> get(Object key) {
+        return containsKey(key) ? store.get(key) : null;
+    }
+
+    @Override
+    public Collection<LibraryItem<T>> values() {
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<LibraryItem<T>> iterator() {
+                return store.itemsWithCategory(code);
+            }
+
+            @Override
+            public int size() {
+                return count;
+            }
+        };
+    }
+
+    @Override
+    public Set<Entry<ItemId, LibraryItem<T>>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<ItemId, LibraryItem<T>>> iterator() {
+                Iterator<LibraryItem<T>> items = store.itemsWithCategory(code);
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return items.hasNext();
+                    }
+
+                    @Override
+                    public Entry<ItemId, LibraryItem<T>> next() {
+                        LibraryItem<T> item = items.next();
+                        return new SimpleImmutableEntry<>(item.getId(), item);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return count;
+            }
+        };
+    }
+}
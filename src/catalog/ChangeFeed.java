@@ -0,0 +1,364 @@
+package catalog;
+
+import java.io.Closeable;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * A stream of a catalog's changes, so consumers can follow the catalog without rescanning it.
+ *
+ * Attached to a catalog as a CatalogListener, the feed numbers every add and remove with a sequence number
+ * and publishes it into a bounded ring buffer. Writers claim sequence numbers with a compare-and-set, and only
+ * take a lock to rescan the subscribers when the buffer looks full. Subscribers read batches of events in sequence order, either by polling or on a
+ * thread of their own, and can resume from any sequence number still in the buffer.
+ *
+ * The buffer provides backpressure: a writer does not overwrite an event until it has been published and
+ * every subscriber has read it, and waits for the slowest subscriber if the buffer is full. A subscriber that is not read from therefore
+ * stalls the catalog's writers, and should be closed when it is no longer used. A subscriber's handler must
+ * not write to the same catalog, as it could end up waiting for itself. The feed is safe to use from
+ * several threads. The catalog notifies each item's changes in the order it applied them, so an item's
+ * events are sequenced in that order too, and a consumer applying the events in sequence order ends up
+ * with the catalog's items.
+ *
+ * Sequence numbers belong to one feed instance: they start at 1 when the feed is created and are not
+ * persisted, so they cannot be used to resume in another process.
+ */
+public class ChangeFeed<T> implements CatalogListener<T> {
+    // Spins before a waiting reader or writer starts parking
+    private static final int SPIN_TRIES = 100;
+    // Time a waiting reader or writer parks between checks
+    private static final long PARK_NANOS = 50_000;
+
+    /**
+     * The kinds of change.
+     */
+    public enum Type {
+        ADDED, REMOVED
+    }
+
+    // Events by sequence number modulo the capacity
+    private final AtomicReferenceArray<ChangeEvent<T>> buffer;
+    private final int mask;
+    // Sequence number of the latest claimed event; the first event is 1
+    private final AtomicLong cursor = new AtomicLong();
+    // Open subscriptions, whose read positions gate the writers
+    private final List<Subscription<T>> subscriptions = new CopyOnWriteArrayList<>();
+    // Lowest read position seen at the last check, so writers only scan the subscriptions when the buffer looks full;
+    // written while holding the subscriptions' lock, so a scan that missed a new subscription cannot replace it
+    private volatile long gatingCache;
+
+    /**
+     * A change to the catalog and its position in the feed.
+     */
+    public static final class ChangeEvent<T> {
+        private final long sequence;
+        private final Type type;
+        private final LibraryItem<T> item;
+
+        private ChangeEvent(long sequence, Type type, LibraryItem<T> item) {
+            this.sequence = sequence;
+            this.type = type;
+            this.item = item;
+        }
+
+        /**
+         * Gets the position of the event in the feed.
+         * @return The sequence number, starting at 1.
+         */
+        public long getSequence() {
+            return sequence;
+        }
+
+        /**
+         * Gets the kind of change.
+         * @return ADDED or REMOVED.
+         */
+        public Type getType() {
+            return type;
+        }
+
+        /**
+         * Gets the item that was added or removed.
+         * @return The item.
+         */
+        public LibraryItem<T> getItem() {
+            return item;
+        }
+
+        @Override
+        public String toString() {
+            return sequence + " " + type + " " + item.getId();
+        }
+    }
+
+    /**
+     * Creates a feed holding up to the given number of unread events.
+     * @param capacity The ring buffer size, a power of two.
+     * @throws IllegalArgumentException if the capacity is not a positive power of two.
+     */
+    public ChangeFeed(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a positive power of two.");
+        }
+        this.buffer = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Starts publishing the changes made to a catalog. Items already in the catalog are not published.
+     * @param catalog The catalog to follow.
+     */
+    public void attach(Catalog<T> catalog) {
+        catalog.addListener(this);
+    }
+
+    @Override
+    public void itemAdded(LibraryItem<T> item) {
+        publish(Type.ADDED, item);
+    }
+
+    @Override
+    public void itemRemoved(LibraryItem<T> item) {
+        publish(Type.REMOVED, item);
+    }
+
+    /**
+     * Gets the sequence number of the latest change, which may still be being published.
+     * @return The latest sequence number, or 0 if there have been no changes.
+     */
+    public long getLastSequence() {
+        return cursor.get();
+    }
+
+    /**
+     * Subscribes to the changes made from now on.
+     * @return A subscription to poll.
+     */
+    public Subscription<T> subscribe() {
+        return subscribe(cursor.get() + 1);
+    }
+
+    /**
+     * Subscribes to the changes from a given sequence number on, e.g. one past the last event a consumer processed.
+     * @param fromSequence The sequence number of the first event to read.
+     * @return A subscription to poll.
+     * @throws IllegalArgumentException if the events from that sequence number have already left the buffer,
+     *                                  or the sequence number is beyond the next change.
+     */
+    public Subscription<T> subscribe(long fromSequence) {
+        Subscription<T> subscription = new Subscription<>(this, fromSequence - 1);
+        // Register and lower the gate before checking the range, so a writer that claims a sequence number after
+        // the check below cannot overwrite this subscription's events
+        synchronized (subscriptions) {
+            subscriptions.add(subscription);
+            gatingCache = minimumGate(cursor.get());
+        }
+        long last = cursor.get();
+        if (fromSequence > last + 1 || fromSequence < 1) {
+            subscription.close();
+            throw new IllegalArgumentException("Sequence " + fromSequence + " is beyond the next change, " + (last + 1) + ".");
+        }
+        // A writer that checked the gate before it was lowered may still claim last + 1, replacing its slot
+        if (fromSequence <= last + 1 - buffer.length()) {
+            subscription.close();
+            throw new IllegalArgumentException("Sequence " + fromSequence + " is no longer in the buffer; the oldest is "
+                    + (last - buffer.length() + 2) + ".");
+        }
+        return subscription;
+    }
+
+    /**
+     * Subscribes a handler that receives the changes from a given sequence number on, in batches, on a thread of
+     * its own. The thread runs until the subscription is closed or the handler throws.
+     * @param fromSequence The sequence number of the first event to deliver.
+     * @param maxBatch The maximum number of events passed to the handler at once.
+     * @param handler Receives each batch, in sequence order.
+     * @return The subscription, to close when the handler is no longer needed.
+     * @throws IllegalArgumentException if the sequence number is not available, as for subscribe(long).
+     */
+    public Subscription<T> subscribe(long fromSequence, int maxBatch, Consumer<List<ChangeEvent<T>>> handler) {
+        Subscription<T> subscription = subscribe(fromSequence);
+        Thread thread = new Thread(() -> {
+            try {
+                while (!subscription.isClosed()) {
+                    List<ChangeEvent<T>> batch = subscription.poll(maxBatch, 100, TimeUnit.MILLISECONDS);
+                    if (!batch.isEmpty()) {
+                        handler.accept(batch);
+                    }
+                }
+            } finally {
+                subscription.close();
+            }
+        }, "change-feed-subscriber");
+        thread.setDaemon(true);
+        thread.start();
+        return subscription;
+    }
+
+    /**
+     * Claims the next sequence number, waiting while the buffer is full, and publishes an event under it.
+     * @param type The kind of change.
+     * @param item The item changed.
+     */
+    private void publish(Type type, LibraryItem<T> item) {
+        int waits = 0;
+        long current;
+        long next;
+        while (true) {
+            current = cursor.get();
+            next = current + 1;
+            long wrapPoint = next - buffer.length();
+            if (wrapPoint > 0) {
+                // The event being replaced in next's slot must have been published, or its writer could later
+                // overwrite this one
+                ChangeEvent<T> previous = buffer.get((int) next & mask);
+                if (previous == null || previous.sequence < wrapPoint) {
+                    waits = backOff(waits);
+                    continue;
+                }
+            }
+            // It must also have been read by every subscriber
+            if (wrapPoint > gatingCache) {
+                long gate;
+                synchronized (subscriptions) {
+                    gate = minimumGate(current);
+                    gatingCache = gate;
+                }
+                if (wrapPoint > gate) {
+                    waits = backOff(waits);
+                    continue;
+                }
+            }
+            if (cursor.compareAndSet(current, next)) {
+                break;
+            }
+        }
+        // A volatile write, so a reader that sees the event also sees the item
+        buffer.set((int) next & mask, new ChangeEvent<>(next, type, item));
+    }
+
+    /**
+     * Finds the read position of the slowest subscriber.
+     * @param current The latest claimed sequence number, returned if there are no subscribers.
+     * @return The lowest sequence number read by every subscriber.
+     */
+    private long minimumGate(long current) {
+        long minimum = current;
+        for (Subscription<T> subscription : subscriptions) {
+            minimum = Math.min(minimum, subscription.consumed);
+        }
+        return minimum;
+    }
+
+    /**
+     * Waits a little, spinning at first and then parking.
+     * @param waits The number of times the caller has waited so far.
+     * @return The new number of waits.
+     */
+    private static int backOff(int waits) {
+        if (waits < SPIN_TRIES) {
+            Thread.onSpinWait();
+        } else {
+            LockSupport.parkNanos(PARK_NANOS);
+        }
+        return waits + 1;
+    }
+
+    /**
+     * A subscriber's position in the feed. Each subscription should be read by one thread at a time.
+     */
+    public static final class Subscription<T> implements Closeable {
+        private final ChangeFeed<T> feed;
+        // Sequence number of the last event read; writers will not overwrite events after it
+        private volatile long consumed;
+        private volatile boolean closed;
+
+        private Subscription(ChangeFeed<T> feed, long consumed) {
+            this.feed = feed;
+            this.consumed = consumed;
+        }
+
+        /**
+         * Reads the events published since the last poll, without waiting.
+         * @param maxEvents The maximum number of events to return.
+         * @return The next events in sequence order, empty if there are none.
+         * @throws IllegalStateException if events were overwritten before they could be read.
+         */
+        public List<ChangeEvent<T>> poll(int maxEvents) {
+            List<ChangeEvent<T>> events = new ArrayList<>();
+            long next = consumed + 1;
+            while (events.size() < maxEvents) {
+                ChangeEvent<T> event = feed.buffer.get((int) next & feed.mask);
+                if (event == null || event.sequence < next) {
+                    // Claimed but not yet published
+                    break;
+                }
+                if (event.sequence > next) {
+                    throw new IllegalStateException("Events from sequence " + next + " were overwritten before they were read.");
+                }
+                events.add(event);
+                next++;
+            }
+            consumed = next - 1;
+            return events;
+        }
+
+        /**
+         * Reads the events published since the last poll, waiting for at least one if there are none.
+         * @param maxEvents The maximum number of events to return.
+         * @param timeout How long to wait for an event.
+         * @param unit The unit of the timeout.
+         * @return The next events in sequence order, empty if none arrived in time or the subscription was closed.
+         * @throws IllegalStateException if events were overwritten before they could be read.
+         */
+        public List<ChangeEvent<T>> poll(int maxEvents, long timeout, TimeUnit unit) {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            int waits = 0;
+            List<ChangeEvent<T>> events = poll(maxEvents);
+            while (events.isEmpty() && !closed && System.nanoTime() < deadline) {
+                waits = backOff(waits);
+                events = poll(maxEvents);
+            }
+            return events;
+        }
+
+        /**
+         * Gets the sequence number of the last event read, to resume from with a new subscription to the same feed.
+         * The number is only meaningful to this feed instance; a new feed, e.g. after a restart, numbers from 1 again.
+         * @return The last sequence number read; subscribe from one past it to continue.
+         */
+        public long getSequence() {
+            return consumed;
+        }
+
+        /**
+         * Gets the number of published events not yet read.
+         * @return The lag behind the latest change.
+         */
+        public long getLag() {
+            return feed.cursor.get() - consumed;
+        }
+
+        /**
+         * Checks whether the subscription has been closed.
+         * @return true if closed.
+         */
+        public boolean isClosed() {
+            return closed;
+        }
+
+        /**
+         * Stops reading, releasing the writers from waiting for this subscription.
+         */
+        @Override
+        public void close() {
+            closed = true;
+            feed.subscriptions.remove(this);
+        }
+    }
+}
@@ -0,0 +1,541 @@
+package catalog;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.BiFunction;
+import java.util.function.IntPredicate;
+
+/**
+ * A map of items stored as primitive columns rather than LibraryItem objects.
+ *
+ * Each item is a row across parallel arrays: the two halves of its ID, dictionary codes for its category
+ * and author, its dates as epoch days, and the offset and length of its title in a shared UTF-8 byte array.
+ * Rows are kept dense: removing an item moves the last row into its place, so scans touch only live rows.
+ * An open-addressing table of row numbers finds rows by ID. LibraryItem objects are only created when an
+ * item is read, and are not retained. Null values are not permitted. Like HashMap, it is not thread-safe.
+ */
+class ColumnStore<T> extends AbstractMap<ItemId, LibraryItem<T>> implements ScannableStore<T> {
+    // Smallest number of rows allocated
+    private static final int MIN_CAPACITY = 16;
+    // Title bytes freed by removals before the title array is compacted, at least
+    private static final int MIN_COMPACTION_GARBAGE = 1 << 20;
+    // Largest array the JVM reliably allocates
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    // Categories and authors, each stored once
+    final Dictionary<T> categories = new Dictionary<>();
+    final Dictionary<String> authors = new Dictionary<>();
+
+    // The columns, by row
+    private long[] mostBits;
+    private long[] leastBits;
+    private int[] categoryCodes;
+    private int[] authorCodes;
+    private int[] releaseDays;
+    private int[] addedDays;
+    private int[] titleOffsets;
+    private int[] titleLengths;
+    // UTF-8 bytes of all titles, used up to titleEnd; titleGarbage bytes belong to removed or replaced rows
+    private byte[] titleBytes;
+    private int titleEnd;
+    private int titleGarbage;
+    // Number of rows
+    private int size;
+    // Hash table of row numbers plus one, by slot; 0 marks a free slot
+    private int[] slots;
+    // Number of structural modifications, used to fail fast during iteration
+    private int modCount;
+
+    /**
+     * Creates an empty store.
+     */
+    ColumnStore() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Creates an empty store sized to hold the expected number of items without growing.
+     * @param expectedSize The number of items the store is expected to hold.
+     */
+    ColumnStore(int expectedSize) {
+        allocateRows(Math.max(MIN_CAPACITY, expectedSize));
+        slots = new int[tableSizeFor(Math.max(MIN_CAPACITY, expectedSize))];
+        titleBytes = new byte[Math.max(MIN_CAPACITY, expectedSize) * 16];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public LibraryItem<T> get(Object key) {
+        int row = findRow(key);
+        return row < 0 ? null : materialize(row);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return findRow(key) >= 0;
+    }
+
+    @Override
+    public LibraryItem<T> put(ItemId key, LibraryItem<T> value) {
+        Objects.requireNonNull(value);
+        int row = findRow(key);
+        LibraryItem<T> previous = row < 0 ? null : materialize(row);
+        store(key, row, value);
+        return previous;
+    }
+
+    @Override
+    public LibraryItem<T> remove(Object key) {
+        int row = findRow(key);
+        if (row < 0) {
+            return null;
+        }
+        LibraryItem<T> previous = materialize(row);
+        removeRow(row);
+        return previous;
+    }
+
+    /**
+     * Computes a new item for an ID, materializing the current item once rather than once per map call.
+     */
+    @Override
+    public LibraryItem<T> compute(ItemId key, BiFunction<? super ItemId, ? super LibraryItem<T>, ? extends LibraryItem<T>> remappingFunction) {
+        int row = findRow(key);
+        LibraryItem<T> value = remappingFunction.apply(key, row < 0 ? null : materialize(row));
+        if (value == null) {
+            if (row >= 0) {
+                removeRow(row);
+            }
+        } else {
+            store(key, row, value);
+        }
+        return value;
+    }
+
+    @Override
+    public LibraryItem<T> computeIfPresent(ItemId key, BiFunction<? super ItemId, ? super LibraryItem<T>, ? extends LibraryItem<T>> remappingFunction) {
+        int row = findRow(key);
+        if (row < 0) {
+            return null;
+        }
+        LibraryItem<T> value = remappingFunction.apply(key, materialize(row));
+        if (value == null) {
+            removeRow(row);
+        } else {
+            store(key, row, value);
+        }
+        return value;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(slots, 0);
+        size = 0;
+        titleEnd = 0;
+        titleGarbage = 0;
+        modCount++;
+    }
+
+    @Override
+    public void ensureCapacity(int expectedSize) {
+        if (expectedSize > mostBits.length) {
+            allocateRows(Math.min(MAX_ARRAY_SIZE, Math.max(expectedSize, mostBits.length + (mostBits.length >> 1))));
+        }
+        if (expectedSize > slots.length / 2) {
+            rehash(tableSizeFor(expectedSize));
+        }
+    }
+
+    @Override
+    public Collection<LibraryItem<T>> values() {
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<LibraryItem<T>> iterator() {
+                return rows(row -> true);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public Set<Entry<ItemId, LibraryItem<T>>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<ItemId, LibraryItem<T>>> iterator() {
+                Iterator<LibraryItem<T>> items = rows(row -> true);
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return items.hasNext();
+                    }
+
+                    @Override
+                    public Entry<ItemId, LibraryItem<T>> next() {
+                        LibraryItem<T> item = items.next();
+                        return new SimpleImmutableEntry<>(item.getId(), item);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    // Column scans
+
+    /**
+     * Iterates over the items of the rows matching a filter, materializing only the matching rows.
+     * @param filter Tests a row number.
+     * @return An iterator over the matching items.
+     */
+    Iterator<LibraryItem<T>> rows(IntPredicate filter) {
+        return new Iterator<>() {
+            private final int expectedModCount = modCount;
+            private int next = advance(0);
+
+            private int advance(int row) {
+                while (row < size && !filter.test(row)) {
+                    row++;
+                }
+                return row;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next < size;
+            }
+
+            @Override
+            public LibraryItem<T> next() {
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                if (next >= size) {
+                    throw new NoSuchElementException();
+                }
+                LibraryItem<T> item = materialize(next);
+                next = advance(next + 1);
+                return item;
+            }
+        };
+    }
+
+    @Override
+    public int encodeCategory(T category) {
+        return categories.encode(category);
+    }
+
+    @Override
+    public Iterator<LibraryItem<T>> itemsWithCategory(int code) {
+        return rows(row -> categoryCodes[row] == code);
+    }
+
+    /**
+     * Iterates over the items with an author code.
+     * @param code The author code.
+     * @return An iterator over the items by the author.
+     */
+    Iterator<LibraryItem<T>> rowsWithAuthor(int code) {
+        return rows(row -> authorCodes[row] == code);
+    }
+
+    /**
+     * Counts the items released between two epoch days, scanning only the release date column.
+     * @param fromDay The first epoch day, inclusive.
+     * @param toDay The last epoch day, inclusive.
+     * @return The number of items released in the range.
+     */
+    int countReleasedBetween(int fromDay, int toDay) {
+        int[] days = releaseDays;
+        int count = 0;
+        for (int row = 0; row < size; row++) {
+            int day = days[row];
+            if (day >= fromDay && day <= toDay && day != CatalogSnapshot.NO_DATE) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public boolean hasCategory(Object key, int code) {
+        int row = findRow(key);
+        return row >= 0 && categoryCodes[row] == code;
+    }
+
+    /**
+     * Estimates the heap used by the columns, the index and the title bytes.
+     * @return The estimated size in bytes, excluding the dictionaries.
+     */
+    long columnBytes() {
+        return 16L * mostBits.length + 24L * categoryCodes.length + 4L * slots.length + titleBytes.length;
+    }
+
+    // Rows
+
+    /**
+     * Creates a LibraryItem from a row.
+     * @param row The row number.
+     * @return A new LibraryItem holding the row's values.
+     */
+    private LibraryItem<T> materialize(int row) {
+        int length = titleLengths[row];
+        String title = length == NULL_CODE ? null : new String(titleBytes, titleOffsets[row], length, StandardCharsets.UTF_8);
+        return new LibraryItem<>(new ItemId(mostBits[row], leastBits[row]), title, authors.decode(authorCodes[row]),
+                categories.decode(categoryCodes[row]), CatalogSnapshot.fromEpochDay(releaseDays[row]),
+                CatalogSnapshot.fromEpochDay(addedDays[row]));
+    }
+
+    /**
+     * Writes an item to its existing row, or to a new row.
+     * @param key The ID of the item.
+     * @param row The existing row of the ID, or -1 to append a row.
+     * @param item The item to write.
+     */
+    private void store(ItemId key, int row, LibraryItem<T> item) {
+        int releaseDay = CatalogSnapshot.toEpochDay(item.getReleaseDate());
+        int addedDay = CatalogSnapshot.toEpochDay(item.getDateAdded());
+        if (row < 0) {
+            ensureCapacity(size + 1);
+            row = size++;
+            mostBits[row] = key.getMostSignificantBits();
+            leastBits[row] = key.getLeastSignificantBits();
+            slots[emptySlot(key.getMostSignificantBits(), key.getLeastSignificantBits())] = row + 1;
+            modCount++;
+        } else if (titleLengths[row] != NULL_CODE) {
+            titleGarbage += titleLengths[row];
+        }
+        categoryCodes[row] = categories.encode(item.getCategory());
+        authorCodes[row] = authors.encode(item.getAuthor());
+        releaseDays[row] = releaseDay;
+        addedDays[row] = addedDay;
+        storeTitle(row, item.getTitle());
+    }
+
+    private void storeTitle(int row, String title) {
+        if (title == null) {
+            titleOffsets[row] = 0;
+            titleLengths[row] = NULL_CODE;
+            return;
+        }
+        byte[] bytes = title.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > titleBytes.length - titleEnd) {
+            growTitles(bytes.length);
+        }
+        System.arraycopy(bytes, 0, titleBytes, titleEnd, bytes.length);
+        titleOffsets[row] = titleEnd;
+        titleLengths[row] = bytes.length;
+        titleEnd += bytes.length;
+    }
+
+    /**
+     * Makes room for more title bytes, reclaiming the space of removed titles before growing the array.
+     * @param needed The number of bytes about to be appended.
+     * @throws IllegalStateException if the titles do not fit in a single array.
+     */
+    private void growTitles(int needed) {
+        long required = (long) titleEnd - titleGarbage + needed;
+        if (required > MAX_ARRAY_SIZE) {
+            throw new IllegalStateException("Title storage is full.");
+        }
+        long capacity = required <= titleBytes.length / 2 ? titleBytes.length : Math.max(2L * titleBytes.length, required);
+        compactTitles((int) Math.min(capacity, MAX_ARRAY_SIZE));
+    }
+
+    /**
+     * Copies the live titles in row order into a new array, dropping the bytes of removed ones.
+     * @param capacity The size of the new array.
+     */
+    private void compactTitles(int capacity) {
+        byte[] compacted = new byte[capacity];
+        int end = 0;
+        for (int row = 0; row < size; row++) {
+            int length = titleLengths[row];
+            if (length != NULL_CODE) {
+                System.arraycopy(titleBytes, titleOffsets[row], compacted, end, length);
+                titleOffsets[row] = end;
+                end += length;
+            }
+        }
+        titleBytes = compacted;
+        titleEnd = end;
+        titleGarbage = 0;
+    }
+
+    /**
+     * Removes a row, moving the last row into its place.
+     * @param row The row to remove.
+     */
+    private void removeRow(int row) {
+        deleteSlot(slotOf(row));
+        if (titleLengths[row] != NULL_CODE) {
+            titleGarbage += titleLengths[row];
+        }
+        int last = --size;
+        if (row != last) {
+            slots[slotOf(last)] = row + 1;
+            mostBits[row] = mostBits[last];
+            leastBits[row] = leastBits[last];
+            categoryCodes[row] = categoryCodes[last];
+            authorCodes[row] = authorCodes[last];
+            releaseDays[row] = releaseDays[last];
+            addedDays[row] = addedDays[last];
+            titleOffsets[row] = titleOffsets[last];
+            titleLengths[row] = titleLengths[last];
+        }
+        modCount++;
+        if (titleGarbage >= MIN_COMPACTION_GARBAGE && titleGarbage > titleEnd / 2) {
+            compactTitles(titleBytes.length);
+        }
+    }
+
+    private void allocateRows(int capacity) {
+        mostBits = Arrays.copyOf(mostBits == null ? new long[0] : mostBits, capacity);
+        leastBits = Arrays.copyOf(leastBits == null ? new long[0] : leastBits, capacity);
+        categoryCodes = Arrays.copyOf(categoryCodes == null ? new int[0] : categoryCodes, capacity);
+        authorCodes = Arrays.copyOf(authorCodes == null ? new int[0] : authorCodes, capacity);
+        releaseDays = Arrays.copyOf(releaseDays == null ? new int[0] : releaseDays, capacity);
+        addedDays = Arrays.copyOf(addedDays == null ? new int[0] : addedDays, capacity);
+        titleOffsets = Arrays.copyOf(titleOffsets == null ? new int[0] : titleOffsets, capacity);
+        titleLengths = Arrays.copyOf(titleLengths == null ? new int[0] : titleLengths, capacity);
+    }
+
+    // Index
+
+    private int findRow(Object key) {
+        if (!(key instanceof ItemId)) {
+            return -1;
+        }
+        ItemId id = (ItemId) key;
+        long most = id.getMostSignificantBits();
+        long least = id.getLeastSignificantBits();
+        int mask = slots.length - 1;
+        for (int slot = ItemId.hash(most, least) & mask; ; slot = (slot + 1) & mask) {
+            int row = slots[slot] - 1;
+            if (row < 0) {
+                return -1;
+            }
+            if (mostBits[row] == most && leastBits[row] == least) {
+                return row;
+            }
+        }
+    }
+
+    /**
+     * Finds the slot holding a row.
+     * @param row A row present in the table.
+     * @return The slot of the row.
+     */
+    private int slotOf(int row) {
+        int mask = slots.length - 1;
+        int slot = ItemId.hash(mostBits[row], leastBits[row]) & mask;
+        while (slots[slot] != row + 1) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private int emptySlot(long most, long least) {
+        int mask = slots.length - 1;
+        int slot = ItemId.hash(most, least) & mask;
+        while (slots[slot] != 0) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Frees a slot, shifting later entries of the same probe run back so lookups never stop early.
+     * @param slot The slot to free.
+     */
+    private void deleteSlot(int slot) {
+        int mask = slots.length - 1;
+        int hole = slot;
+        for (int next = (hole + 1) & mask; slots[next] != 0; next = (next + 1) & mask) {
+            int row = slots[next] - 1;
+            int home = ItemId.hash(mostBits[row], leastBits[row]) & mask;
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                slots[hole] = slots[next];
+                hole = next;
+            }
+        }
+        slots[hole] = 0;
+    }
+
+    private void rehash(int tableSize) {
+        slots = new int[tableSize];
+        for (int row = 0; row < size; row++) {
+            slots[emptySlot(mostBits[row], leastBits[row])] = row + 1;
+        }
+    }
+
+    /**
+     * Finds the table size keeping the load factor at or below one half.
+     * @param expectedSize The number of rows to hold.
+     * @return A power of two at least twice the expected size.
+     */
+    private static int tableSizeFor(int expectedSize) {
+        int size = MIN_CAPACITY;
+        while (size / 2 < expectedSize) {
+            size <<= 1;
+        }
+        return size;
+    }
+
+    /**
+     * Assigns each distinct value a small int code, so repeated values are stored once.
+     * Codes are never reused, so values stay in the dictionary after the last item holding them is removed.
+     */
+    static final class Dictionary<V> {
+        private final Map<V, Integer> codes = new HashMap<>();
+        private final List<V> values = new ArrayList<>();
+
+        /**
+         * Gets the code of a value, assigning one if the value is new.
+         * @param value The value to encode.
+         * @return The code, or NULL_CODE for null.
+         */
+        int encode(V value) {
+            if (value == null) {
+                return NULL_CODE;
+            }
+            Integer code = codes.get(value);
+            if (code == null) {
+                code = values.size();
+                codes.put(value, code);
+                values.add(value);
+            }
+            return code;
+        }
+
+        /**
+         * Gets the code of a value without assigning one.
+         * @param value The value to look up.
+         * @return The code, or NULL_CODE if the value is null or has never been encoded.
+         */
+        int codeOf(V value) {
+            Integer code = value == null ? null : codes.get(value);
+            return code == null ? NULL_CODE : code;
+        }
+
+        /**
+         * Gets the value of a code.
+         * @param code The code to decode.
+         * @return The value, or null for NULL_CODE.
+         */
+        V decode(int code) {
+            return code == NULL_CODE ? null : values.get(code);
+        }
+    }
+}
@@ -0,0 +1,82 @@
+package catalog;
+
+import java.time.LocalDate;
+import java.util.*;
+
+/**
+ * A Catalog that stores its items as primitive columns instead of LibraryItem objects, for very large catalogs.
+ *
+ * Categories and authors are dictionary-encoded, dates are stored as epoch days and titles are packed into a
+ * single UTF-8 byte array, so an item costs a few dozen bytes rather than seven objects. Items are
+ * materialized as new LibraryItem objects when read, so reading the same item twice gives two distinct
+ * objects with the same values. The category index keeps only a count per category; listing a category scans the
+ * category column. Scans are cache-friendly, but a single lookup touches every column, so reading one item
+ * is slower than with the default Catalog. Like Catalog, it is not thread-safe.
+ */
+public class ColumnarCatalog<T> extends Catalog<T> {
+    // The columns holding the items
+    private final ColumnStore<T> store;
+
+    /**
+     * Creates an empty columnar catalog.
+     */
+    public ColumnarCatalog() {
+        this(new ColumnStore<>());
+    }
+
+    /**
+     * Creates an empty columnar catalog sized for the expected number of items.
+     * @param expectedItems The number of items the catalog is expected to hold.
+     */
+    public ColumnarCatalog(int expectedItems) {
+        this(new ColumnStore<>(expectedItems));
+    }
+
+    private ColumnarCatalog(ColumnStore<T> store) {
+        super(store, new HashMap<>());
+        this.store = store;
+    }
+
+    /**
+     * Retrieves all items by an author, scanning the author column.
+     * @param author The author to look up.
+     * @return The items by the author, empty if there are none.
+     */
+    public List<LibraryItem<T>> getItemsByAuthor(String author) {
+        int code = store.authors.codeOf(author);
+        List<LibraryItem<T>> items = new ArrayList<>();
+        if (code != ColumnStore.NULL_CODE) {
+            store.rowsWithAuthor(code).forEachRemaining(items::add);
+        }
+        return items;
+    }
+
+    /**
+     * Counts the items released in a date range, scanning the release date column without materializing items.
+     * @param from The first release date, inclusive.
+     * @param to The last release date, inclusive.
+     * @return The number of items released in the range.
+     */
+    public int countReleasedBetween(LocalDate from, LocalDate to) {
+        long fromDay = Math.max(from.toEpochDay(), CatalogSnapshot.NO_DATE + 1L);
+        long toDay = Math.min(to.toEpochDay(), Integer.MAX_VALUE);
+        return fromDay > toDay ? 0 : store.countReleasedBetween((int) fromDay, (int) toDay);
+    }
+
+    /**
+     * Estimates the heap used by the item columns.
+     * @return The estimated size in bytes, excluding the category and author dictionaries.
+     */
+    public long getColumnBytes() {
+        return store.columnBytes();
+    }
+
+    /**
+     * Creates a bucket that counts the items of a category instead of holding them.
+     * @return A new, empty category bucket.
+     */
+    @Override
+    protected Map<ItemId, LibraryItem<T>> newCategoryBucket() {
+        return new CategoryCountView<>(store);
+    }
+}
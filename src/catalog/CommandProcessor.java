@@ -0,0 +1,392 @@
+package catalog;
+
+import java.io.*;
+import java.time.LocalDate;
+import java.util.*;
+import java.util.function.Function;
+
+import validators.DateParser;
+import validators.InputValidator;
+
+/**
+ * Executes a stream of text commands against a catalog, for scripted and piped use without the interactive menu.
+ *
+ * Each input line is one command with its fields separated by tabs. Blank lines and lines starting with # are
+ * ignored:
+ * <pre>
+ * add        title  author  category  release-date   -> ok     id
+ * remove     id                                       -> ok
+ * get        id                                       -> item   ...   (or "none")
+ * list       [category]                               -> item   ...   then end  count
+ * query      words                                    -> item   ...   then end  count
+ * categories                                          -> category  name  count   then end  count
+ * count                                               -> count  n
+ * </pre>
+ * Item lines are "item", ID, category, title, author, release date and date added. A failed command writes
+ * "error", its line number and the reason, and processing continues. Tabs, newlines and backslashes inside
+ * fields are escaped as \t, \n, \r and \\ in both directions.
+ *
+ * Consecutive adds are collected and applied with a single Catalog.addAll, so a workload of adds runs at bulk
+ * load speed. A pending batch is always applied before any other command runs, so later commands see it.
+ * The "ok" lines of a batch are held back until it has been applied, so no add is acknowledged before the
+ * catalog holds its item, however much output the writer flushes along the way. Output is written to the
+ * given Writer, which the caller should buffer. A processor is not thread-safe.
+ */
+public class CommandProcessor<T> {
+    // Number of consecutive adds applied in one addAll
+    private static final int DEFAULT_BATCH_SIZE = 4096;
+
+    // The catalog the commands run against
+    private final Catalog<T> catalog;
+    // Converts the category field of an add to the catalog's category type
+    private final Function<String, T> categoryParser;
+    // Index used by query, attached to the catalog by the caller
+    private final SearchIndex<T> searchIndex;
+    // Parses release dates; YYYY-MM-DD only, as in the interactive menu
+    private final DateParser dateParser = new DateParser();
+    // Maximum number of adds applied together
+    private final int batchSize;
+    // Adds read but not yet applied to the catalog or acknowledged
+    private final List<LibraryItem<T>> pending = new ArrayList<>();
+    // Reused to format item IDs without creating a String per item
+    private final StringBuilder idText = new StringBuilder(ItemId.STRING_LENGTH);
+
+    /**
+     * Creates a processor with the default batch size.
+     * @param catalog The catalog to run commands against.
+     * @param categoryParser A function converting category fields to the catalog's category type.
+     * @param searchIndex An index attached to the catalog, used by query.
+     */
+    public CommandProcessor(Catalog<T> catalog, Function<String, T> categoryParser, SearchIndex<T> searchIndex) {
+        this(catalog, categoryParser, searchIndex, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Creates a processor.
+     * @param catalog The catalog to run commands against.
+     * @param categoryParser A function converting category fields to the catalog's category type.
+     * @param searchIndex An index attached to the catalog, used by query.
+     * @param batchSize The maximum number of consecutive adds applied with one addAll.
+     * @throws IllegalArgumentException if the batch size is not positive.
+     */
+    public CommandProcessor(Catalog<T> catalog, Function<String, T> categoryParser, SearchIndex<T> searchIndex, int batchSize) {
+        if (batchSize <= 0) {
+            throw new IllegalArgumentException("Batch size must be positive.");
+        }
+        this.catalog = catalog;
+        this.categoryParser = categoryParser;
+        this.searchIndex = searchIndex;
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * Runs every command from a reader, writing the results to a writer.
+     * The writer is flushed at the end but not closed.
+     * @param in The commands, one per line.
+     * @param out The destination of the results.
+     * @return The number of commands run and failed, and the time taken.
+     * @throws IOException if reading the commands or writing the results fails.
+     */
+    public RunResult run(BufferedReader in, Writer out) throws IOException {
+        long start = System.nanoTime();
+        long commands = 0;
+        long errors = 0;
+        long lineNumber = 0;
+        String line;
+        while ((line = in.readLine()) != null) {
+            lineNumber++;
+            if (line.isEmpty() || line.charAt(0) == '#') {
+                continue;
+            }
+            commands++;
+            if (!execute(line, lineNumber, out)) {
+                errors++;
+            }
+        }
+        applyPending(out);
+        out.flush();
+        return new RunResult(commands, errors, System.nanoTime() - start);
+    }
+
+    /**
+     * Runs a single command, writing its result.
+     * Adds and their results may be held back until the batch fills or another command runs; call flush to
+     * apply them.
+     * @param line The command line.
+     * @param lineNumber The number reported with an error.
+     * @param out The destination of the result.
+     * @return true if the command succeeded, false if an error line was written.
+     * @throws IOException if writing the result fails.
+     */
+    public boolean execute(String line, long lineNumber, Writer out) throws IOException {
+        String[] fields = split(line);
+        try {
+            String command = fields[0];
+            if (command.equals("add")) {
+                add(fields, out);
+                return true;
+            }
+            applyPending(out);
+            switch (command) {
+                case "remove":
+                    requireFields(fields, 2);
+                    catalog.removeItem(fields[1]);
+                    out.write("ok\n");
+                    break;
+                case "get":
+                    requireFields(fields, 2);
+                    LibraryItem<T> item = catalog.getItem(fields[1]);
+                    if (item == null) {
+                        out.write("none\n");
+                    } else {
+                        writeItem(item, out);
+                    }
+                    break;
+                case "list":
+                    Collection<LibraryItem<T>> items = fields.length > 1
+                            ? catalog.getItemsByCategory(categoryParser.apply(fields[1])) : catalog.getItems();
+                    writeItems(items, out);
+                    break;
+                case "query":
+                    requireFields(fields, 2);
+                    writeItems(searchIndex.search(fields[1]), out);
+                    break;
+                case "categories":
+                    Map<T, Integer> counts = catalog.getCategoryCounts();
+                    for (Map.Entry<T, Integer> category : counts.entrySet()) {
+                        out.write("category\t");
+                        writeField(String.valueOf(category.getKey()), out);
+                        out.write('\t');
+                        out.write(Integer.toString(category.getValue()));
+                        out.write('\n');
+                    }
+                    out.write("end\t" + counts.size() + "\n");
+                    break;
+                case "count":
+                    out.write("count\t" + catalog.size() + "\n");
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown command " + command);
+            }
+            return true;
+        } catch (IllegalArgumentException e) {
+            if (fields[0].equals("add")) {
+                // Answer the adds before this one first, so results stay in command order
+                applyPending(out);
+            }
+            out.write("error\t" + lineNumber + "\t");
+            writeField(e.getMessage(), out);
+            out.write('\n');
+            return false;
+        }
+    }
+
+    /**
+     * Applies any adds held back by execute and writes their results.
+     * @param out The destination of the results.
+     * @throws IOException if writing the results fails.
+     */
+    public void flush(Writer out) throws IOException {
+        applyPending(out);
+    }
+
+    /**
+     * Validates an add and queues its item, applying the batch once it is full.
+     * @param fields The command fields.
+     * @param out The destination of the batch's results.
+     * @throws IOException if writing the result fails.
+     */
+    private void add(String[] fields, Writer out) throws IOException {
+        requireFields(fields, 5);
+        for (int i = 1; i < 4; i++) {
+            if (!InputValidator.validateNonNullAndNonEmpty(fields[i])) {
+                throw new IllegalArgumentException("Title, author and category must not be empty.");
+            }
+        }
+        LocalDate releaseDate = dateParser.parse(fields[4]);
+        if (releaseDate == null) {
+            throw new IllegalArgumentException("Invalid date " + fields[4] + ". Please use YYYY-MM-DD.");
+        }
+        LibraryItem<T> item = new LibraryItem<>(fields[1], fields[2], categoryParser.apply(fields[3]), releaseDate);
+        pending.add(item);
+        if (pending.size() >= batchSize) {
+            applyPending(out);
+        }
+    }
+
+    /**
+     * Adds the queued items to the catalog in one batch, then writes each new item's ID.
+     * @param out The destination of the results.
+     * @throws IOException if writing the results fails.
+     */
+    private void applyPending(Writer out) throws IOException {
+        if (!pending.isEmpty()) {
+            // Take the batch first, so a failed write cannot leave it queued to be added again
+            List<LibraryItem<T>> batch = new ArrayList<>(pending);
+            pending.clear();
+            catalog.addAll(batch);
+            for (LibraryItem<T> item : batch) {
+                out.write("ok\t");
+                writeId(item.getId(), out);
+                out.write('\n');
+            }
+        }
+    }
+
+    /**
+     * Checks that a command has at least the given number of fields, including the command itself.
+     * @param fields The command fields.
+     * @param count The number of fields required.
+     * @throws IllegalArgumentException if there are too few fields.
+     */
+    private static void requireFields(String[] fields, int count) {
+        if (fields.length < count) {
+            throw new IllegalArgumentException(fields[0] + " needs " + (count - 1) + " fields, got " + (fields.length - 1) + ".");
+        }
+    }
+
+    /**
+     * Writes an item line for each item, followed by an end line with their count.
+     * @param items The items to write.
+     * @param out The destination.
+     * @throws IOException if writing fails.
+     */
+    private void writeItems(Collection<LibraryItem<T>> items, Writer out) throws IOException {
+        int count = 0;
+        for (LibraryItem<T> item : items) {
+            writeItem(item, out);
+            count++;
+        }
+        out.write("end\t" + count + "\n");
+    }
+
+    /**
+     * Writes a single item line.
+     * @param item The item to write.
+     * @param out The destination.
+     * @throws IOException if writing fails.
+     */
+    private void writeItem(LibraryItem<T> item, Writer out) throws IOException {
+        out.write("item\t");
+        writeId(item.getId(), out);
+        out.write('\t');
+        writeField(String.valueOf(item.getCategory()), out);
+        out.write('\t');
+        writeField(item.getTitle(), out);
+        out.write('\t');
+        writeField(item.getAuthor(), out);
+        out.write('\t');
+        out.write(String.valueOf(item.getReleaseDate()));
+        out.write('\t');
+        out.write(String.valueOf(item.getDateAdded()));
+        out.write('\n');
+    }
+
+    /**
+     * Writes an item ID in its text form.
+     * @param id The ID to write.
+     * @param out The destination.
+     * @throws IOException if writing fails.
+     */
+    private void writeId(ItemId id, Writer out) throws IOException {
+        idText.setLength(0);
+        out.append(id.appendTo(idText));
+    }
+
+    /**
+     * Writes a field, escaping the characters that would break the line format.
+     * @param value The field value.
+     * @param out The destination.
+     * @throws IOException if writing fails.
+     */
+    static void writeField(String value, Writer out) throws IOException {
+        int plain = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            String escape = c == '\t' ? "\\t" : c == '\n' ? "\\n" : c == '\r' ? "\\r" : c == '\\' ? "\\\\" : null;
+            if (escape != null) {
+                out.write(value, plain, i - plain);
+                out.write(escape);
+                plain = i + 1;
+            }
+        }
+        out.write(value, plain, value.length() - plain);
+    }
+
+    /**
+     * Splits a command line on tabs and unescapes each field.
+     * @param line The command line.
+     * @return The fields, at least one.
+     */
+    static String[] split(String line) {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == '\t') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\\' && i + 1 < line.length()) {
+                char next = line.charAt(++i);
+                field.append(next == 't' ? '\t' : next == 'n' ? '\n' : next == 'r' ? '\r' : next);
+            } else {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields.toArray(new String[0]);
+    }
+
+    /**
+     * The outcome of a run: how many commands were run and failed, and how long it took.
+     */
+    public static class RunResult {
+        private final long commands;
+        private final long errors;
+        private final long elapsedNanos;
+
+        RunResult(long commands, long errors, long elapsedNanos) {
+            this.commands = commands;
+            this.errors = errors;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * Gets the number of commands run, excluding blank lines and comments.
+         * @return The number of commands.
+         */
+        public long getCommands() {
+            return commands;
+        }
+
+        /**
+         * Gets the number of commands that failed.
+         * @return The number of error lines written.
+         */
+        public long getErrors() {
+            return errors;
+        }
+
+        /**
+         * Gets the time the run took.
+         * @return The elapsed time in nanoseconds.
+         */
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        /**
+         * Gets the command throughput.
+         * @return The number of commands run per second.
+         */
+        public double getCommandsPerSecond() {
+            return elapsedNanos == 0 ? 0 : commands * 1_000_000_000.0 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Ran %d commands, %d failed in %.1f ms (%.0f commands/sec)",
+                    commands, errors, elapsedNanos / 1_000_000.0, getCommandsPerSecond());
+        }
+    }
+}
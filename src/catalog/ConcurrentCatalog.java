@@ -0,0 +1,43 @@
+package catalog;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * A Catalog that can be shared between threads without external locking.
+ * Items and the category index are held in ConcurrentHashMaps, so updates only lock the bins they touch,
+ * reads never lock, and iteration (displayCatalog, getCategories, getCategoryCounts) is weakly consistent
+ * and never blocks writers. Each category's items are in a concurrent bucket of their own, which writers
+ * update without locking the category, so writes to one category scale across cores. A category's bucket
+ * is kept once it is empty, as dropping it could race with a writer adding to it; empty categories are
+ * left out of getCategories and getCategoryCounts.
+ *
+ * A writer holds one of a set of write locks, striped by item ID, while it changes an item and calls the
+ * journal and listeners, so each item's changes are journaled and notified in the order they were applied.
+ */
+public class ConcurrentCatalog<T> extends Catalog<T> {
+
+    /**
+     * Creates an empty concurrent catalog.
+     */
+    public ConcurrentCatalog() {
+        super(new ConcurrentHashMap<>(), new ConcurrentHashMap<>(), true);
+    }
+
+    /**
+     * Creates an empty concurrent catalog sized for the expected number of items.
+     * @param expectedItems The number of items the catalog is expected to hold.
+     */
+    public ConcurrentCatalog(int expectedItems) {
+        super(new ConcurrentHashMap<>(expectedItems), new ConcurrentHashMap<>(), true);
+    }
+
+    /**
+     * Creates a concurrent bucket so category views can be iterated while other threads update them.
+     * @return A new, empty category bucket.
+     */
+    @Override
+    protected Map<ItemId, LibraryItem<T>> newCategoryBucket() {
+        return new ConcurrentHashMap<>();
+    }
+}
@@ -0,0 +1,417 @@
+package catalog;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Function;
+
+/**
+ * A sorted index of a catalog's items by one of their dates, for time-window queries.
+ *
+ * Dates are keyed by epoch day in a sorted primitive int array, with the items of each day in a bucket
+ * alongside it, so a day is found by binary search. A Fenwick tree over the bucket sizes gives the number
+ * of items up to any day in logarithmic time, which answers range and per-month counts without visiting
+ * any items. Items without the date are not indexed. The index is safe to use from several threads.
+ */
+public class DateIndex<T> implements CatalogListener<T> {
+    // Reads the indexed date from an item
+    private final Function<LibraryItem<T>, LocalDate> dateOf;
+    // Sorted distinct epoch days; a day whose last item is removed keeps an empty bucket until the next rebuild
+    private int[] days = new int[16];
+    // Items of each day, parallel to days
+    private final List<ItemIdMap<LibraryItem<T>>> buckets = new ArrayList<>();
+    // Fenwick tree over the bucket sizes (1-based)
+    private int[] tree = new int[17];
+    // Number of items in the index
+    private int size;
+    // Number of days with an empty bucket
+    private int emptyDays;
+    // Queries share the read lock, updates take the write lock
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Creates an index on the date returned by the given function.
+     * @param dateOf A function returning the date to index an item by, or null if it has none.
+     */
+    public DateIndex(Function<LibraryItem<T>, LocalDate> dateOf) {
+        this.dateOf = dateOf;
+    }
+
+    /**
+     * Creates an index on the release date.
+     * @return The new index.
+     */
+    public static <T> DateIndex<T> byReleaseDate() {
+        return new DateIndex<>(LibraryItem::getReleaseDate);
+    }
+
+    /**
+     * Creates an index on the date the item was added.
+     * @return The new index.
+     */
+    public static <T> DateIndex<T> byDateAdded() {
+        return new DateIndex<>(LibraryItem::getDateAdded);
+    }
+
+    /**
+     * Indexes the items already in a catalog and then keeps the index up to date with its changes.
+     * @param catalog The catalog to index.
+     */
+    public void attach(Catalog<T> catalog) {
+        itemsAdded(catalog.getItems());
+        catalog.addListener(this);
+    }
+
+    @Override
+    public void itemAdded(LibraryItem<T> item) {
+        lock.writeLock().lock();
+        try {
+            add(item);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void itemsAdded(Collection<LibraryItem<T>> items) {
+        lock.writeLock().lock();
+        try {
+            // Insert all new days in one merge so a bulk load does not rebuild the tree once per day.
+            // Empty days are included, as the merge would otherwise drop them.
+            Set<Integer> newDays = new TreeSet<>();
+            for (LibraryItem<T> item : items) {
+                LocalDate date = dateOf.apply(item);
+                if (date != null) {
+                    int position = find(epochDay(date));
+                    if (position < 0 || buckets.get(position).isEmpty()) {
+                        newDays.add(epochDay(date));
+                    }
+                }
+            }
+            if (!newDays.isEmpty()) {
+                rebuild(newDays.stream().mapToInt(Integer::intValue).toArray());
+            }
+            for (LibraryItem<T> item : items) {
+                add(item);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void itemRemoved(LibraryItem<T> item) {
+        LocalDate date = dateOf.apply(item);
+        if (date == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            int position = find(epochDay(date));
+            if (position >= 0 && buckets.get(position).remove(item.getId()) != null) {
+                update(position, -1);
+                size--;
+                if (buckets.get(position).isEmpty()) {
+                    emptyDays++;
+                    // Drop the empty days once they outnumber the others, so churn cannot grow the arrays
+                    if (emptyDays > buckets.size() / 2) {
+                        rebuild(new int[0]);
+                    }
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the number of indexed items.
+     * @return The number of items with the date set.
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the items whose date falls in a range.
+     * @param from The first date of the range, inclusive.
+     * @param to The last date of the range, inclusive.
+     * @return The matching items, oldest date first.
+     */
+    public List<LibraryItem<T>> between(LocalDate from, LocalDate to) {
+        lock.readLock().lock();
+        try {
+            int start = lowerBound(epochDay(from));
+            int end = lowerBound(epochDay(to) + 1L);
+            List<LibraryItem<T>> result = new ArrayList<>(countPositions(start, end));
+            for (int position = start; position < end; position++) {
+                result.addAll(buckets.get(position).values());
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Counts the items whose date falls in a range, without visiting them.
+     * @param from The first date of the range, inclusive.
+     * @param to The last date of the range, inclusive.
+     * @return The number of matching items.
+     */
+    public int countBetween(LocalDate from, LocalDate to) {
+        lock.readLock().lock();
+        try {
+            return countPositions(lowerBound(epochDay(from)), lowerBound(epochDay(to) + 1L));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Counts the items on each day of a range that has any.
+     * @param from The first date of the range, inclusive.
+     * @param to The last date of the range, inclusive.
+     * @return The item count of each day with items, in date order.
+     */
+    public SortedMap<LocalDate, Integer> countsByDay(LocalDate from, LocalDate to) {
+        lock.readLock().lock();
+        try {
+            SortedMap<LocalDate, Integer> counts = new TreeMap<>();
+            int end = lowerBound(epochDay(to) + 1L);
+            for (int position = lowerBound(epochDay(from)); position < end; position++) {
+                int count = buckets.get(position).size();
+                if (count > 0) {
+                    counts.put(LocalDate.ofEpochDay(days[position]), count);
+                }
+            }
+            return counts;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Counts the items in each month of a range that has any.
+     * @param from The first month of the range, inclusive.
+     * @param to The last month of the range, inclusive.
+     * @return The item count of each month with items, in date order.
+     */
+    public SortedMap<YearMonth, Integer> countsByMonth(YearMonth from, YearMonth to) {
+        lock.readLock().lock();
+        try {
+            SortedMap<YearMonth, Integer> counts = new TreeMap<>();
+            int start = lowerBound(epochDay(from.atDay(1)));
+            int last = lowerBound(epochDay(to.atEndOfMonth()) + 1L);
+            // Jump from month to month through the days that are present, so empty months cost nothing
+            while (start < last) {
+                YearMonth month = YearMonth.from(LocalDate.ofEpochDay(days[start]));
+                int end = lowerBound(epochDay(month.atEndOfMonth()) + 1L);
+                int count = countPositions(start, end);
+                if (count > 0) {
+                    counts.put(month, count);
+                }
+                start = end;
+            }
+            return counts;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Retrieves the items with the latest dates.
+     * @param n The maximum number of items to return.
+     * @return Up to n items, newest date first.
+     * @throws IllegalArgumentException if n is negative.
+     */
+    public List<LibraryItem<T>> newest(int n) {
+        if (n < 0) {
+            throw new IllegalArgumentException("Number of items must not be negative.");
+        }
+        lock.readLock().lock();
+        try {
+            List<LibraryItem<T>> result = new ArrayList<>(Math.min(n, size));
+            // Rank of the newest item not yet taken; each step jumps straight to the day holding it, over empty days
+            int rank = size;
+            while (rank > 0 && result.size() < n) {
+                ItemIdMap<LibraryItem<T>> bucket = buckets.get(positionOfRank(rank));
+                for (LibraryItem<T> item : bucket.values()) {
+                    if (result.size() == n) {
+                        break;
+                    }
+                    result.add(item);
+                }
+                rank -= bucket.size();
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds an item to the bucket of its date, creating the bucket if the date is new.
+     * @param item The item to index.
+     */
+    private void add(LibraryItem<T> item) {
+        LocalDate date = dateOf.apply(item);
+        if (date == null) {
+            return;
+        }
+        int day = epochDay(date);
+        int position = find(day);
+        if (position < 0) {
+            rebuild(new int[] {day});
+            position = find(day);
+        }
+        ItemIdMap<LibraryItem<T>> bucket = buckets.get(position);
+        if (bucket.isEmpty()) {
+            emptyDays--;
+        }
+        if (bucket.put(item.getId(), item) == null) {
+            update(position, 1);
+            size++;
+        }
+    }
+
+    /**
+     * Merges new days into the sorted days, drops the days left empty, and rebuilds the Fenwick tree.
+     * New days are rare next to new items, so the linear cost is paid seldom.
+     * @param newDays The sorted epoch days to insert; a day already present is kept even if it is empty.
+     */
+    private void rebuild(int[] newDays) {
+        int count = buckets.size();
+        int[] merged = new int[Math.max(16, Integer.highestOneBit(Math.max(1, count + newDays.length)) * 2)];
+        List<ItemIdMap<LibraryItem<T>>> mergedBuckets = new ArrayList<>(count + newDays.length);
+        int i = 0;
+        int j = 0;
+        emptyDays = 0;
+        while (i < count || j < newDays.length) {
+            if (j == newDays.length || (i < count && days[i] < newDays[j])) {
+                if (!buckets.get(i).isEmpty()) {
+                    merged[mergedBuckets.size()] = days[i];
+                    mergedBuckets.add(buckets.get(i));
+                }
+                i++;
+            } else {
+                ItemIdMap<LibraryItem<T>> bucket = new ItemIdMap<>();
+                if (i < count && days[i] == newDays[j]) {
+                    bucket = buckets.get(i++);
+                }
+                if (bucket.isEmpty()) {
+                    emptyDays++;
+                }
+                merged[mergedBuckets.size()] = newDays[j++];
+                mergedBuckets.add(bucket);
+            }
+        }
+        int total = mergedBuckets.size();
+        days = merged;
+        buckets.clear();
+        buckets.addAll(mergedBuckets);
+        // Rebuild the tree in linear time from the bucket sizes, carrying sums up to the root for positionOfRank
+        tree = new int[days.length + 1];
+        for (int position = 1; position < tree.length; position++) {
+            if (position <= total) {
+                tree[position] += buckets.get(position - 1).size();
+            }
+            int parent = position + (position & -position);
+            if (parent < tree.length) {
+                tree[parent] += tree[position];
+            }
+        }
+    }
+
+    /**
+     * Adds a delta to the count of a position in the Fenwick tree.
+     * @param position The position of the day.
+     * @param delta The change in the day's item count.
+     */
+    private void update(int position, int delta) {
+        for (int i = position + 1; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    /**
+     * Sums the item counts of the days before a position.
+     * @param position The end position, exclusive.
+     * @return The number of items on those days.
+     */
+    private int countBefore(int position) {
+        int sum = 0;
+        for (int i = position; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Finds the day holding the item of a given rank in date order, by descending the Fenwick tree.
+     * @param rank The rank, from 1 to the number of items.
+     * @return The position of the day.
+     */
+    private int positionOfRank(int rank) {
+        // The tree covers a power-of-two number of positions, so each step halves the range
+        int position = 0;
+        for (int step = days.length; step > 0; step >>= 1) {
+            int next = position + step;
+            if (next < tree.length && tree[next] < rank) {
+                position = next;
+                rank -= tree[next];
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Sums the item counts of a range of positions.
+     * @param start The first position, inclusive.
+     * @param end The last position, exclusive.
+     * @return The number of items on those days.
+     */
+    private int countPositions(int start, int end) {
+        return end <= start ? 0 : countBefore(end) - countBefore(start);
+    }
+
+    /**
+     * Finds a day by binary search.
+     * @param day The epoch day.
+     * @return The day's position, or (-(insertion point) - 1) if it is not present.
+     */
+    private int find(int day) {
+        return Arrays.binarySearch(days, 0, buckets.size(), day);
+    }
+
+    /**
+     * Finds the first position whose day is at least the given day.
+     * @param day The epoch day.
+     * @return The position, or the number of days if every day is earlier.
+     */
+    private int lowerBound(long day) {
+        if (day > Integer.MAX_VALUE) {
+            return buckets.size();
+        }
+        if (day < Integer.MIN_VALUE) {
+            return 0;
+        }
+        int position = find((int) day);
+        return position >= 0 ? position : -position - 1;
+    }
+
+    /**
+     * Converts a date to an epoch day, clamped to the int range.
+     * @param date The date.
+     * @return The epoch day.
+     */
+    private static int epochDay(LocalDate date) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, date.toEpochDay()));
+    }
+}
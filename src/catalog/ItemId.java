@@ -0,0 +1,187 @@
+package catalog;
+
+/**
+ * A compact 128-bit identifier for library items, held as two longs.
+ * Its text form is the usual 36-character UUID layout, so IDs printed by earlier versions still parse.
+ */
+public final class ItemId implements Comparable<ItemId> {
+    // Length of the text form, e.g. 0190c3e2-7a4b-7c1d-9e2f-3a4b5c6d7e8f
+    public static final int STRING_LENGTH = 36;
+    // Hex digits used when formatting
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    // High and low 64 bits of the identifier
+    private final long mostSignificantBits;
+    private final long leastSignificantBits;
+
+    /**
+     * Creates an ID from its two halves.
+     * @param mostSignificantBits The high 64 bits.
+     * @param leastSignificantBits The low 64 bits.
+     */
+    public ItemId(long mostSignificantBits, long leastSignificantBits) {
+        this.mostSignificantBits = mostSignificantBits;
+        this.leastSignificantBits = leastSignificantBits;
+    }
+
+    /**
+     * Gets the high 64 bits of the ID.
+     * @return The high 64 bits.
+     */
+    public long getMostSignificantBits() {
+        return mostSignificantBits;
+    }
+
+    /**
+     * Gets the low 64 bits of the ID.
+     * @return The low 64 bits.
+     */
+    public long getLeastSignificantBits() {
+        return leastSignificantBits;
+    }
+
+    /**
+     * Parses an ID from its 36-character text form.
+     * @param text The text to parse.
+     * @return The parsed ID.
+     * @throws IllegalArgumentException if the text is not a valid ID.
+     */
+    public static ItemId parse(String text) {
+        ItemId id = tryParse(text);
+        if (id == null) {
+            throw new IllegalArgumentException("Invalid item ID: " + text);
+        }
+        return id;
+    }
+
+    /**
+     * Parses an ID from its 36-character text form without throwing.
+     * @param text The text to parse.
+     * @return The parsed ID, or null if the text is not a valid ID.
+     */
+    public static ItemId tryParse(CharSequence text) {
+        if (text == null || text.length() != STRING_LENGTH) {
+            return null;
+        }
+        long most = 0;
+        long least = 0;
+        int digits = 0;
+        for (int i = 0; i < STRING_LENGTH; i++) {
+            char c = text.charAt(i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') {
+                    return null;
+                }
+                continue;
+            }
+            int value = hexValue(c);
+            if (value < 0) {
+                return null;
+            }
+            if (digits < 16) {
+                most = (most << 4) | value;
+            } else {
+                least = (least << 4) | value;
+            }
+            digits++;
+        }
+        return new ItemId(most, least);
+    }
+
+    /**
+     * Gets the value of an ASCII hex digit. Unlike Character.digit, other Unicode digits are rejected, so every ID
+     * has only the text forms that appendTo writes, in either case.
+     * @param c The character.
+     * @return The digit's value, or -1 if it is not 0-9, a-f or A-F.
+     */
+    private static int hexValue(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+
+    /**
+     * Appends the 36-character text form of the ID to a StringBuilder without creating a String.
+     * @param builder The builder to append to.
+     * @return The same builder.
+     */
+    public StringBuilder appendTo(StringBuilder builder) {
+        appendHex(builder, mostSignificantBits >>> 32, 8);
+        builder.append('-');
+        appendHex(builder, mostSignificantBits >>> 16, 4);
+        builder.append('-');
+        appendHex(builder, mostSignificantBits, 4);
+        builder.append('-');
+        appendHex(builder, leastSignificantBits >>> 48, 4);
+        builder.append('-');
+        appendHex(builder, leastSignificantBits, 12);
+        return builder;
+    }
+
+    /**
+     * Appends the lowest hex digits of a value.
+     * @param builder The builder to append to.
+     * @param value The value to format.
+     * @param digits The number of hex digits to append.
+     */
+    private static void appendHex(StringBuilder builder, long value, int digits) {
+        for (int shift = (digits - 1) * 4; shift >= 0; shift -= 4) {
+            builder.append(HEX_DIGITS[(int) (value >>> shift) & 0xF]);
+        }
+    }
+
+    /**
+     * Compares IDs as unsigned 128-bit numbers, which orders time-based IDs by creation time.
+     * @param other The ID to compare with.
+     * @return A negative number, zero or a positive number as this ID is less than, equal to or greater than the other.
+     */
+    @Override
+    public int compareTo(ItemId other) {
+        int result = Long.compareUnsigned(mostSignificantBits, other.mostSignificantBits);
+        return result != 0 ? result : Long.compareUnsigned(leastSignificantBits, other.leastSignificantBits);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (!(other instanceof ItemId)) {
+            return false;
+        }
+        ItemId id = (ItemId) other;
+        return mostSignificantBits == id.mostSignificantBits && leastSignificantBits == id.leastSignificantBits;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash(mostSignificantBits, leastSignificantBits);
+    }
+
+    /**
+     * Hashes the two halves of an ID, spreading the bits so that sequential IDs land in different buckets.
+     * @param mostSignificantBits The high 64 bits.
+     * @param leastSignificantBits The low 64 bits.
+     * @return The hash code.
+     */
+    static int hash(long mostSignificantBits, long leastSignificantBits) {
+        long h = (mostSignificantBits ^ Long.rotateLeft(leastSignificantBits, 32)) * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Returns the 36-character text form of the ID.
+     * @return The text form of the ID.
+     */
+    @Override
+    public String toString() {
+        return appendTo(new StringBuilder(STRING_LENGTH)).toString();
+    }
+}
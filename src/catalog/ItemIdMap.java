@@ -0,0 +1,294 @@
+package catalog;
+
+import java.util.*;
+
+/**
+ * A hash map keyed by ItemId that stores the two halves of each key in primitive long arrays.
+ * Lookups probe the arrays directly (open addressing with linear probing), so no per-entry node objects
+ * are allocated and lookups by raw bits need no ItemId at all. Null values are not permitted.
+ * Like HashMap, it is not thread-safe.
+ */
+public class ItemIdMap<V> extends AbstractMap<ItemId, V> {
+    // Smallest table size
+    private static final int MIN_CAPACITY = 16;
+
+    // High and low halves of the keys, and the values, by slot; a null value marks a free slot
+    private long[] mostBits;
+    private long[] leastBits;
+    private Object[] values;
+    // Number of entries in the map
+    private int size;
+    // Entry count at which the table is doubled
+    private int resizeThreshold;
+    // Number of structural modifications, used to fail fast during iteration
+    private int modCount;
+
+    /**
+     * Creates an empty map.
+     */
+    public ItemIdMap() {
+        this(MIN_CAPACITY / 2);
+    }
+
+    /**
+     * Creates an empty map sized to hold the expected number of entries without resizing.
+     * @param expectedSize The number of entries the map is expected to hold.
+     */
+    public ItemIdMap(int expectedSize) {
+        allocate(tableSizeFor(expectedSize));
+    }
+
+    /**
+     * Retrieves the value for a key given as raw bits.
+     * @param mostSignificantBits The high 64 bits of the key.
+     * @param leastSignificantBits The low 64 bits of the key.
+     * @return The value for the key, or null if the key is not present.
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long mostSignificantBits, long leastSignificantBits) {
+        int slot = findSlot(mostSignificantBits, leastSignificantBits);
+        return slot < 0 ? null : (V) values[slot];
+    }
+
+    @Override
+    public V get(Object key) {
+        if (!(key instanceof ItemId)) {
+            return null;
+        }
+        ItemId id = (ItemId) key;
+        return get(id.getMostSignificantBits(), id.getLeastSignificantBits());
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V put(ItemId key, V value) {
+        Objects.requireNonNull(value, "value");
+        long most = key.getMostSignificantBits();
+        long least = key.getLeastSignificantBits();
+        int mask = values.length - 1;
+        int slot = ItemId.hash(most, least) & mask;
+        while (values[slot] != null) {
+            if (mostBits[slot] == most && leastBits[slot] == least) {
+                V previous = (V) values[slot];
+                values[slot] = value;
+                return previous;
+            }
+            slot = (slot + 1) & mask;
+        }
+        mostBits[slot] = most;
+        leastBits[slot] = least;
+        values[slot] = value;
+        modCount++;
+        if (++size > resizeThreshold) {
+            resize(values.length * 2);
+        }
+        return null;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V remove(Object key) {
+        if (!(key instanceof ItemId)) {
+            return null;
+        }
+        ItemId id = (ItemId) key;
+        int slot = findSlot(id.getMostSignificantBits(), id.getLeastSignificantBits());
+        if (slot < 0) {
+            return null;
+        }
+        V previous = (V) values[slot];
+        deleteSlot(slot);
+        return previous;
+    }
+
+    /**
+     * Grows the table, if needed, so the given number of entries fit without further resizing.
+     * @param expectedSize The number of entries the map is expected to hold.
+     */
+    public void ensureCapacity(int expectedSize) {
+        int capacity = tableSizeFor(expectedSize);
+        if (capacity > values.length) {
+            resize(capacity);
+        }
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(values, null);
+        size = 0;
+        modCount++;
+    }
+
+    @Override
+    public Collection<V> values() {
+        return new AbstractCollection<V>() {
+            @Override
+            public Iterator<V> iterator() {
+                return new SlotIterator<V>() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    V element(int slot) {
+                        return (V) values[slot];
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public Set<Map.Entry<ItemId, V>> entrySet() {
+        return new AbstractSet<Map.Entry<ItemId, V>>() {
+            @Override
+            public Iterator<Map.Entry<ItemId, V>> iterator() {
+                return new SlotIterator<Map.Entry<ItemId, V>>() {
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    Map.Entry<ItemId, V> element(int slot) {
+                        return new AbstractMap.SimpleImmutableEntry<>(new ItemId(mostBits[slot], leastBits[slot]), (V) values[slot]);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    /**
+     * Finds the slot holding a key.
+     * @param most The high 64 bits of the key.
+     * @param least The low 64 bits of the key.
+     * @return The slot index, or -1 if the key is not present.
+     */
+    private int findSlot(long most, long least) {
+        int mask = values.length - 1;
+        int slot = ItemId.hash(most, least) & mask;
+        while (values[slot] != null) {
+            if (mostBits[slot] == most && leastBits[slot] == least) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    /**
+     * Empties a slot, shifting later entries of the probe chain back so lookups never need tombstones.
+     * @param slot The slot to empty.
+     */
+    private void deleteSlot(int slot) {
+        int mask = values.length - 1;
+        int free = slot;
+        int next = (free + 1) & mask;
+        while (values[next] != null) {
+            int home = ItemId.hash(mostBits[next], leastBits[next]) & mask;
+            // Move the entry back if its home slot is not cyclically between the free slot and its current slot
+            if (((next - home) & mask) >= ((next - free) & mask)) {
+                mostBits[free] = mostBits[next];
+                leastBits[free] = leastBits[next];
+                values[free] = values[next];
+                free = next;
+            }
+            next = (next + 1) & mask;
+        }
+        values[free] = null;
+        size--;
+        modCount++;
+    }
+
+    /**
+     * Rehashes all entries into a table of the given size.
+     * @param capacity The new table size, a power of two.
+     */
+    private void resize(int capacity) {
+        long[] oldMost = mostBits;
+        long[] oldLeast = leastBits;
+        Object[] oldValues = values;
+        allocate(capacity);
+        int mask = capacity - 1;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] != null) {
+                int slot = ItemId.hash(oldMost[i], oldLeast[i]) & mask;
+                while (values[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                mostBits[slot] = oldMost[i];
+                leastBits[slot] = oldLeast[i];
+                values[slot] = oldValues[i];
+            }
+        }
+    }
+
+    /**
+     * Allocates empty arrays of the given size.
+     * @param capacity The table size, a power of two.
+     */
+    private void allocate(int capacity) {
+        mostBits = new long[capacity];
+        leastBits = new long[capacity];
+        values = new Object[capacity];
+        resizeThreshold = (int) (capacity * 0.7f);
+    }
+
+    /**
+     * Computes the table size needed to hold the given number of entries below the load factor.
+     * @param expectedSize The number of entries.
+     * @return A power of two table size.
+     */
+    private static int tableSizeFor(int expectedSize) {
+        int needed = (int) Math.min(1 << 30, (long) Math.ceil(expectedSize / 0.7) + 1);
+        return Math.max(MIN_CAPACITY, Integer.highestOneBit(needed - 1) << 1);
+    }
+
+    /**
+     * Iterates over the occupied slots, failing fast if the map is modified during iteration.
+     */
+    private abstract class SlotIterator<E> implements Iterator<E> {
+        private final int expectedModCount = modCount;
+        private int slot = nextOccupied(0);
+
+        abstract E element(int slot);
+
+        private int nextOccupied(int from) {
+            while (from < values.length && values[from] == null) {
+                from++;
+            }
+            return from;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return slot < values.length;
+        }
+
+        @Override
+        public E next() {
+            if (modCount != expectedModCount) {
+                throw new ConcurrentModificationException();
+            }
+            if (slot >= values.length) {
+                throw new NoSuchElementException();
+            }
+            E element = element(slot);
+            slot = nextOccupied(slot + 1);
+            return element;
+        }
+    }
+}
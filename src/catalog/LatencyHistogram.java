@@ -0,0 +1,138 @@
+package catalog;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A fixed-size histogram of latencies in nanoseconds with log-linear buckets, in the style of HdrHistogram.
+ *
+ * Values below 32 get a bucket each. Above that every power of two is split into 16 buckets, so a recorded
+ * value is reported to within 1/16 (6.25%) of itself, from nanoseconds up to hours, in under a thousand
+ * buckets. Recording is a few arithmetic operations and an atomic increment, with no allocation, and is
+ * safe from several threads. Reads taken while values are being recorded may be off by those values.
+ */
+public class LatencyHistogram {
+    // Number of bits after the leading one kept when bucketing a value
+    private static final int SUB_BUCKET_BITS = 4;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Values below this get a bucket each
+    private static final int LINEAR_LIMIT = 2 * SUB_BUCKETS;
+    // Enough buckets for any non-negative long
+    private static final int BUCKETS = LINEAR_LIMIT + (63 - SUB_BUCKET_BITS - 1) * SUB_BUCKETS;
+
+    // Number of values recorded in each bucket
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Records a latency.
+     * @param nanos The latency in nanoseconds; negative values are recorded as zero.
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        counts.incrementAndGet(bucketOf(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Gets the number of recorded latencies.
+     * @return The count.
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Gets the largest recorded latency.
+     * @return The maximum in nanoseconds, or 0 if none have been recorded.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Gets the mean recorded latency.
+     * @return The mean in nanoseconds, or 0 if none have been recorded.
+     */
+    public double getMean() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    /**
+     * Gets the latency at or below which a given share of the recorded latencies fall.
+     * @param percentile The percentile, between 0 and 100.
+     * @return The highest latency in the bucket holding the percentile, capped at the maximum, or 0 if none have been recorded.
+     * @throws IllegalArgumentException if the percentile is out of range.
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100.");
+        }
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= target) {
+                return Math.min(highestValueIn(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Clears every recorded latency. Latencies recorded concurrently may be partly kept.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.reset();
+        sum.reset();
+        max.reset();
+    }
+
+    /**
+     * Maps a value to its bucket.
+     * @param value A non-negative value.
+     * @return The bucket index.
+     */
+    static int bucketOf(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR_LIMIT + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + subBucket;
+    }
+
+    /**
+     * Gets the highest value that maps to a bucket.
+     * @param bucket The bucket index.
+     * @return The bucket's upper bound, inclusive.
+     */
+    static long highestValueIn(int bucket) {
+        if (bucket < LINEAR_LIMIT) {
+            return bucket;
+        }
+        int exponent = (bucket - LINEAR_LIMIT) / SUB_BUCKETS + SUB_BUCKET_BITS + 1;
+        long subBucket = (bucket - LINEAR_LIMIT) % SUB_BUCKETS;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        // Computed as the lower bound plus the width minus one, so the top bucket does not overflow
+        return ((SUB_BUCKETS + subBucket) << (exponent - SUB_BUCKET_BITS)) + (width - 1);
+    }
+}
@@ -1,4 +1,5 @@
-import java.util.*;
+package catalog;
+
 import java.time.*;
 
 public class LibraryItem<T> {
@@ -6,7 +7,7 @@ public class LibraryItem<T> {
     // Attributes of the LibraryItem
     private String title;
     private String author;
-    private String itemID;
+    private ItemId itemID;
     private T category;
     private LocalDate releaseDate;
     private LocalDate dateAdded;
@@ -21,12 +22,30 @@ public class LibraryItem<T> {
     public LibraryItem(String title, String author, T category, LocalDate releaseDate) {
         this.title = title;
         this.author = author;
-        this.itemID = UUID.randomUUID().toString(); // Automatically generate unique ID
+        this.itemID = ItemIdGenerator.nextId(); // Automatically generate unique ID
         this.category = category;
         this.releaseDate = releaseDate;
         this.dateAdded = LocalDate.now(); // Automatically set to the current date
     }
 
+    /**
+     * Constructor to recreate an existing LibraryItem, such as one loaded from a file.
+     * @param itemID The unique ID of the item.
+     * @param title The title of the item.
+     * @param author The author of the item.
+     * @param category The category of the item.
+     * @param releaseDate The release date of the item.
+     * @param dateAdded The date the item was added to the catalog.
+     */
+    public LibraryItem(ItemId itemID, String title, String author, T category, LocalDate releaseDate, LocalDate dateAdded) {
+        this.title = title;
+        this.author = author;
+        this.itemID = itemID;
+        this.category = category;
+        this.releaseDate = releaseDate;
+        this.dateAdded = dateAdded;
+    }
+
     // Getters
 
     /**
@@ -49,10 +68,18 @@ public class LibraryItem<T> {
      * Gets the unique ID of the item.
      * @return The item ID.
      */
-    public String getItemID() {
+    public ItemId getId() {
         return itemID;
     }
 
+    /**
+     * Gets the unique ID of the item in its text form.
+     * @return The item ID as a string.
+     */
+    public String getItemID() {
+        return itemID.toString();
+    }
+
     /**
      * Gets the category of the item.
      * @return The category of the item.
@@ -0,0 +1,68 @@
+package catalog;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * A Catalog that keeps its items outside the Java heap, for catalogs large enough that GC pauses matter.
+ *
+ * Item records and the hash index live in direct memory, and can spill to a memory-mapped scratch file once
+ * a direct memory limit is reached. Removed records are reused through per-size free lists. Items are
+ * materialized as new LibraryItem objects when read, and the category index keeps only a count per category;
+ * listing a category walks the records. Only the category and author dictionaries stay on the heap.
+ * Close the catalog to delete its spill file. Like Catalog, it is not thread-safe.
+ */
+public class OffHeapCatalog<T> extends Catalog<T> implements Closeable {
+    // The off-heap records and index
+    private final OffHeapStore<T> store;
+
+    /**
+     * Creates an empty catalog held entirely in direct memory.
+     */
+    public OffHeapCatalog() {
+        this(new OffHeapStore<>());
+    }
+
+    /**
+     * Creates an empty catalog that spills its records to a memory-mapped file beyond a direct memory limit.
+     * @param directLimit The bytes of direct memory the records may use before spilling.
+     * @param spillFile The scratch file to spill to. An existing file is truncated, and the file is deleted on close.
+     * @throws java.io.UncheckedIOException if the spill file cannot be opened.
+     */
+    public OffHeapCatalog(long directLimit, Path spillFile) {
+        this(new OffHeapStore<>(directLimit, spillFile));
+    }
+
+    private OffHeapCatalog(OffHeapStore<T> store) {
+        super(store, new HashMap<>());
+        this.store = store;
+    }
+
+    /**
+     * Gets the off-heap memory in use.
+     * @return The bytes of direct memory and mapped file held by the records and the index.
+     */
+    public long getOffHeapBytes() {
+        return store.offHeapBytes();
+    }
+
+    /**
+     * Creates a bucket that counts the items of a category instead of holding them.
+     * @return A new, empty category bucket.
+     */
+    @Override
+    protected Map<ItemId, LibraryItem<T>> newCategoryBucket() {
+        return new CategoryCountView<>(store);
+    }
+
+    /**
+     * Releases the spill file. The catalog cannot be used afterwards.
+     * @throws IOException if the spill file cannot be closed or deleted.
+     */
+    @Override
+    public void close() throws IOException {
+        store.close();
+    }
+}
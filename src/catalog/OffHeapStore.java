@@ -0,0 +1,600 @@
+package catalog;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.function.BiFunction;
+
+/**
+ * A map of items whose records and hash index live outside the Java heap, so they add nothing to GC work.
+ *
+ * Records are written to fixed-size segments of direct memory. Each record takes a block of one of a set of
+ * size classes, and freed blocks are kept on a free list per size class, linked through the blocks themselves,
+ * so removed space is reused. Once a direct memory limit is reached, further segments are mapped from a
+ * spill file instead. The spill file is scratch space, not a persistent format: it is truncated when the
+ * store is created and deleted when it is closed.
+ *
+ * The index is an open-addressing table in direct memory. Each slot holds a record address tagged with
+ * 16 bits of the ID's hash, so most mismatching slots are skipped without reading their record. Only the
+ * category and author dictionaries are kept on the heap, and a LibraryItem is only created for an item
+ * that is read. Null values are not permitted. Like HashMap, it is not thread-safe.
+ */
+class OffHeapStore<T> extends AbstractMap<ItemId, LibraryItem<T>> implements ScannableStore<T>, Closeable {
+    // Segments are 2^SEGMENT_BITS bytes; a record address is the segment number and the offset within it
+    private static final int SEGMENT_BITS = 23;
+    private static final int SEGMENT_SIZE = 1 << SEGMENT_BITS;
+    private static final long OFFSET_MASK = SEGMENT_SIZE - 1;
+    // Index buffers hold 2^INDEX_BUFFER_BITS slots of 8 bytes each
+    private static final int INDEX_BUFFER_BITS = 27;
+    private static final long INDEX_BUFFER_MASK = (1L << INDEX_BUFFER_BITS) - 1;
+    // Smallest and largest number of index slots
+    private static final long MIN_INDEX_SLOTS = 1 << 10;
+    private static final long MAX_INDEX_SLOTS = 1L << 34;
+    // Address bits of an index slot; the top 16 bits hold the hash tag
+    private static final long ADDRESS_MASK = (1L << 48) - 1;
+
+    // Record layout: the size class (negated and less one when the block is free), the title length
+    // (NULL_CODE for null), the ID halves, the category and author codes, the dates as epoch days and the title
+    private static final int HEADER = 0;
+    private static final int TITLE_LENGTH = 4;
+    private static final int MOST_BITS = 8;
+    private static final int LEAST_BITS = 16;
+    private static final int CATEGORY = 24;
+    private static final int AUTHOR = 28;
+    private static final int RELEASE_DAY = 32;
+    private static final int ADDED_DAY = 36;
+    private static final int TITLE = 40;
+    // In a free block, the address plus one of the next free block of the same class, or 0
+    private static final int NEXT_FREE = 8;
+
+    // Block sizes, growing by alternate factors of 1.5 and 4/3 up to a whole segment
+    private static final int[] SIZE_CLASSES;
+
+    static {
+        List<Integer> sizes = new ArrayList<>(List.of(48));
+        for (int size = 64; size < SEGMENT_SIZE; size = size % 3 == 0 ? size / 3 * 4 : size / 2 * 3) {
+            sizes.add(size);
+        }
+        sizes.add(SEGMENT_SIZE);
+        SIZE_CLASSES = sizes.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    // Categories and authors, each stored once on the heap
+    private final ColumnStore.Dictionary<T> categories = new ColumnStore.Dictionary<>();
+    private final ColumnStore.Dictionary<String> authors = new ColumnStore.Dictionary<>();
+
+    // Record segments, and the number of bytes used in each
+    private ByteBuffer[] segments = new ByteBuffer[16];
+    private int[] segmentEnds = new int[16];
+    private int segmentCount;
+    // Address plus one of the first free block of each size class, or 0
+    private final long[] freeHeads = new long[SIZE_CLASSES.length];
+    // Index slots: 0 when free, otherwise the hash tag and the record address plus one
+    private ByteBuffer[] index;
+    private long indexMask;
+    // Number of items
+    private int size;
+    // Number of structural modifications, used to fail fast during iteration
+    private int modCount;
+
+    // Bytes of direct memory segments may use before spilling to the file
+    private final long directLimit;
+    private long directBytes;
+    // Spill file and its channel, or null if the store never spills
+    private final Path spillFile;
+    private final FileChannel spillChannel;
+    private int spilledSegments;
+
+    /**
+     * Creates an empty store held entirely in direct memory.
+     */
+    OffHeapStore() {
+        this(Long.MAX_VALUE, null);
+    }
+
+    /**
+     * Creates an empty store that maps further segments from a file once a direct memory limit is reached.
+     * @param directLimit The bytes of direct memory the records may use before spilling.
+     * @param spillFile The file to spill to, or null to never spill. An existing file is truncated.
+     * @throws UncheckedIOException if the spill file cannot be opened.
+     */
+    OffHeapStore(long directLimit, Path spillFile) {
+        this.directLimit = directLimit;
+        this.spillFile = spillFile;
+        try {
+            this.spillChannel = spillFile == null ? null : FileChannel.open(spillFile, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        allocateIndex(MIN_INDEX_SLOTS);
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public LibraryItem<T> get(Object key) {
+        long slot = findSlot(key);
+        return slot < 0 ? null : materialize(addressAt(slot));
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return findSlot(key) >= 0;
+    }
+
+    @Override
+    public LibraryItem<T> put(ItemId key, LibraryItem<T> value) {
+        Objects.requireNonNull(value);
+        long slot = findSlot(key);
+        LibraryItem<T> previous = slot < 0 ? null : materialize(addressAt(slot));
+        store(key, slot, value);
+        return previous;
+    }
+
+    @Override
+    public LibraryItem<T> remove(Object key) {
+        long slot = findSlot(key);
+        if (slot < 0) {
+            return null;
+        }
+        LibraryItem<T> previous = materialize(addressAt(slot));
+        removeSlot(slot);
+        return previous;
+    }
+
+    /**
+     * Computes a new item for an ID, materializing the current item once rather than once per map call.
+     */
+    @Override
+    public LibraryItem<T> compute(ItemId key, BiFunction<? super ItemId, ? super LibraryItem<T>, ? extends LibraryItem<T>> remappingFunction) {
+        long slot = findSlot(key);
+        LibraryItem<T> value = remappingFunction.apply(key, slot < 0 ? null : materialize(addressAt(slot)));
+        if (value == null) {
+            if (slot >= 0) {
+                removeSlot(slot);
+            }
+        } else {
+            store(key, slot, value);
+        }
+        return value;
+    }
+
+    @Override
+    public LibraryItem<T> computeIfPresent(ItemId key, BiFunction<? super ItemId, ? super LibraryItem<T>, ? extends LibraryItem<T>> remappingFunction) {
+        long slot = findSlot(key);
+        if (slot < 0) {
+            return null;
+        }
+        LibraryItem<T> value = remappingFunction.apply(key, materialize(addressAt(slot)));
+        if (value == null) {
+            removeSlot(slot);
+        } else {
+            store(key, slot, value);
+        }
+        return value;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(segments, null);
+        Arrays.fill(segmentEnds, 0);
+        Arrays.fill(freeHeads, 0);
+        segmentCount = 0;
+        directBytes = 0;
+        spilledSegments = 0;
+        size = 0;
+        allocateIndex(MIN_INDEX_SLOTS);
+        modCount++;
+    }
+
+    @Override
+    public void ensureCapacity(int expectedSize) {
+        long slots = indexMask + 1;
+        if (expectedSize > slots / 2) {
+            while (expectedSize > slots / 2) {
+                slots <<= 1;
+            }
+            if (slots > MAX_INDEX_SLOTS) {
+                throw new IllegalStateException("Off-heap index is full.");
+            }
+            rehash(slots);
+        }
+    }
+
+    @Override
+    public Collection<LibraryItem<T>> values() {
+        return new AbstractCollection<>() {
+            @Override
+            public Iterator<LibraryItem<T>> iterator() {
+                return records(ScannableStore.NULL_CODE, false);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public Set<Entry<ItemId, LibraryItem<T>>> entrySet() {
+        return new AbstractSet<>() {
+            @Override
+            public Iterator<Entry<ItemId, LibraryItem<T>>> iterator() {
+                Iterator<LibraryItem<T>> items = records(ScannableStore.NULL_CODE, false);
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return items.hasNext();
+                    }
+
+                    @Override
+                    public Entry<ItemId, LibraryItem<T>> next() {
+                        LibraryItem<T> item = items.next();
+                        return new SimpleImmutableEntry<>(item.getId(), item);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    @Override
+    public int encodeCategory(T category) {
+        return categories.encode(category);
+    }
+
+    @Override
+    public boolean hasCategory(Object key, int code) {
+        long slot = findSlot(key);
+        if (slot < 0) {
+            return false;
+        }
+        long address = addressAt(slot);
+        return segment(address).getInt(offset(address) + CATEGORY) == code;
+    }
+
+    @Override
+    public Iterator<LibraryItem<T>> itemsWithCategory(int code) {
+        return records(code, true);
+    }
+
+    /**
+     * Gets the off-heap memory in use.
+     * @return The bytes of direct memory and mapped file held by the segments and the index.
+     */
+    long offHeapBytes() {
+        return (long) segmentCount * SEGMENT_SIZE + (indexMask + 1) * Long.BYTES;
+    }
+
+    /**
+     * Releases the spill file. Direct memory is released once the store is garbage collected.
+     * @throws IOException if the spill file cannot be closed or deleted.
+     */
+    @Override
+    public void close() throws IOException {
+        Arrays.fill(segments, null);
+        index = null;
+        if (spillChannel != null) {
+            spillChannel.close();
+            Files.deleteIfExists(spillFile);
+        }
+    }
+
+    // Records
+
+    /**
+     * Walks the segments in address order, skipping free blocks.
+     * @param code The category code to match.
+     * @param byCategory true to return only the items in the category, false to return every item.
+     * @return An iterator over the matching items.
+     */
+    private Iterator<LibraryItem<T>> records(int code, boolean byCategory) {
+        return new Iterator<>() {
+            private final int expectedModCount = modCount;
+            private int segment;
+            private int offset;
+            // Address of the next matching record, or -1 once the walk is finished
+            private long next = advance();
+
+            private long advance() {
+                for (; segment < segmentCount; segment++, offset = 0) {
+                    ByteBuffer buffer = segments[segment];
+                    while (offset < segmentEnds[segment]) {
+                        int header = buffer.getInt(offset + HEADER);
+                        int at = offset;
+                        offset += SIZE_CLASSES[header >= 0 ? header : -header - 1];
+                        if (header >= 0 && (!byCategory || buffer.getInt(at + CATEGORY) == code)) {
+                            return ((long) segment << SEGMENT_BITS) | at;
+                        }
+                    }
+                }
+                return -1;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next >= 0;
+            }
+
+            @Override
+            public LibraryItem<T> next() {
+                if (modCount != expectedModCount) {
+                    throw new ConcurrentModificationException();
+                }
+                if (next < 0) {
+                    throw new NoSuchElementException();
+                }
+                LibraryItem<T> item = materialize(next);
+                next = advance();
+                return item;
+            }
+        };
+    }
+
+    /**
+     * Creates a LibraryItem from a record.
+     * @param address The address of the record.
+     * @return A new LibraryItem holding the record's values.
+     */
+    private LibraryItem<T> materialize(long address) {
+        ByteBuffer buffer = segment(address);
+        int offset = offset(address);
+        int titleLength = buffer.getInt(offset + TITLE_LENGTH);
+        String title = null;
+        if (titleLength != NULL_CODE) {
+            byte[] bytes = new byte[titleLength];
+            buffer.get(offset + TITLE, bytes);
+            title = new String(bytes, StandardCharsets.UTF_8);
+        }
+        return new LibraryItem<>(new ItemId(buffer.getLong(offset + MOST_BITS), buffer.getLong(offset + LEAST_BITS)),
+                title, authors.decode(buffer.getInt(offset + AUTHOR)), categories.decode(buffer.getInt(offset + CATEGORY)),
+                CatalogSnapshot.fromEpochDay(buffer.getInt(offset + RELEASE_DAY)),
+                CatalogSnapshot.fromEpochDay(buffer.getInt(offset + ADDED_DAY)));
+    }
+
+    /**
+     * Writes an item to a new block, or over its existing record if the record's block is the right size.
+     * @param key The ID of the item.
+     * @param slot The index slot of the existing record, or -1 if the ID is new.
+     * @param item The item to write.
+     * @throws IllegalArgumentException if a date is out of range or the title does not fit in a segment.
+     */
+    private void store(ItemId key, long slot, LibraryItem<T> item) {
+        int releaseDay = CatalogSnapshot.toEpochDay(item.getReleaseDate());
+        int addedDay = CatalogSnapshot.toEpochDay(item.getDateAdded());
+        byte[] title = item.getTitle() == null ? null : item.getTitle().getBytes(StandardCharsets.UTF_8);
+        int sizeClass = sizeClassFor(TITLE + (title == null ? 0 : title.length));
+        long address;
+        if (slot < 0) {
+            ensureCapacity(size + 1);
+            address = allocate(sizeClass);
+            slot = emptySlot(key.getMostSignificantBits(), key.getLeastSignificantBits());
+            setSlot(slot, tagOf(key.getMostSignificantBits(), key.getLeastSignificantBits()) | (address + 1));
+            size++;
+            modCount++;
+        } else {
+            address = addressAt(slot);
+            if (segment(address).getInt(offset(address) + HEADER) != sizeClass) {
+                long moved = allocate(sizeClass);
+                free(address);
+                address = moved;
+                setSlot(slot, (slotAt(slot) & ~ADDRESS_MASK) | (address + 1));
+                modCount++;
+            }
+        }
+        ByteBuffer buffer = segment(address);
+        int offset = offset(address);
+        buffer.putInt(offset + HEADER, sizeClass);
+        buffer.putInt(offset + TITLE_LENGTH, title == null ? NULL_CODE : title.length);
+        buffer.putLong(offset + MOST_BITS, key.getMostSignificantBits());
+        buffer.putLong(offset + LEAST_BITS, key.getLeastSignificantBits());
+        buffer.putInt(offset + CATEGORY, categories.encode(item.getCategory()));
+        buffer.putInt(offset + AUTHOR, authors.encode(item.getAuthor()));
+        buffer.putInt(offset + RELEASE_DAY, releaseDay);
+        buffer.putInt(offset + ADDED_DAY, addedDay);
+        if (title != null) {
+            buffer.put(offset + TITLE, title);
+        }
+    }
+
+    private static int sizeClassFor(int recordSize) {
+        for (int sizeClass = 0; sizeClass < SIZE_CLASSES.length; sizeClass++) {
+            if (SIZE_CLASSES[sizeClass] >= recordSize) {
+                return sizeClass;
+            }
+        }
+        throw new IllegalArgumentException("Item record of " + recordSize + " bytes does not fit in a segment.");
+    }
+
+    /**
+     * Takes a block from the free list of its size class, or from the end of the last segment.
+     * @param sizeClass The size class of the block.
+     * @return The address of the block.
+     */
+    private long allocate(int sizeClass) {
+        long head = freeHeads[sizeClass];
+        if (head != 0) {
+            long address = head - 1;
+            freeHeads[sizeClass] = segment(address).getLong(offset(address) + NEXT_FREE);
+            return address;
+        }
+        int blockSize = SIZE_CLASSES[sizeClass];
+        if (segmentCount == 0 || segmentEnds[segmentCount - 1] > SEGMENT_SIZE - blockSize) {
+            addSegment();
+        }
+        int segment = segmentCount - 1;
+        int offset = segmentEnds[segment];
+        segmentEnds[segment] = offset + blockSize;
+        return ((long) segment << SEGMENT_BITS) | offset;
+    }
+
+    /**
+     * Marks a block free and pushes it on the free list of its size class.
+     * @param address The address of the block.
+     */
+    private void free(long address) {
+        ByteBuffer buffer = segment(address);
+        int offset = offset(address);
+        int sizeClass = buffer.getInt(offset + HEADER);
+        buffer.putInt(offset + HEADER, -sizeClass - 1);
+        buffer.putLong(offset + NEXT_FREE, freeHeads[sizeClass]);
+        freeHeads[sizeClass] = address + 1;
+    }
+
+    /**
+     * Adds a segment of direct memory, or of the spill file once the direct memory limit is reached.
+     * @throws UncheckedIOException if the spill file cannot be mapped.
+     */
+    private void addSegment() {
+        if (segmentCount == segments.length) {
+            segments = Arrays.copyOf(segments, segmentCount * 2);
+            segmentEnds = Arrays.copyOf(segmentEnds, segmentCount * 2);
+        }
+        ByteBuffer segment;
+        if (spillChannel != null && directBytes + SEGMENT_SIZE > directLimit) {
+            try {
+                segment = spillChannel.map(FileChannel.MapMode.READ_WRITE, (long) spilledSegments * SEGMENT_SIZE, SEGMENT_SIZE);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            spilledSegments++;
+        } else {
+            segment = ByteBuffer.allocateDirect(SEGMENT_SIZE);
+            directBytes += SEGMENT_SIZE;
+        }
+        segments[segmentCount] = segment.order(ByteOrder.nativeOrder());
+        segmentEnds[segmentCount] = 0;
+        segmentCount++;
+    }
+
+    private ByteBuffer segment(long address) {
+        return segments[(int) (address >>> SEGMENT_BITS)];
+    }
+
+    private static int offset(long address) {
+        return (int) (address & OFFSET_MASK);
+    }
+
+    // Index
+
+    /**
+     * Mixes the two halves of an ID into a 64-bit hash: the low bits pick the slot and the top 16 bits are the tag.
+     */
+    private static long hash(long most, long least) {
+        long h = (most ^ Long.rotateLeft(least, 32)) * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    private static long tagOf(long most, long least) {
+        return hash(most, least) & ~ADDRESS_MASK;
+    }
+
+    private long findSlot(Object key) {
+        if (!(key instanceof ItemId)) {
+            return -1;
+        }
+        ItemId id = (ItemId) key;
+        long most = id.getMostSignificantBits();
+        long least = id.getLeastSignificantBits();
+        long h = hash(most, least);
+        long tag = h & ~ADDRESS_MASK;
+        for (long slot = h & indexMask; ; slot = (slot + 1) & indexMask) {
+            long entry = slotAt(slot);
+            if (entry == 0) {
+                return -1;
+            }
+            if ((entry & ~ADDRESS_MASK) == tag) {
+                long address = (entry & ADDRESS_MASK) - 1;
+                ByteBuffer buffer = segment(address);
+                int offset = offset(address);
+                if (buffer.getLong(offset + MOST_BITS) == most && buffer.getLong(offset + LEAST_BITS) == least) {
+                    return slot;
+                }
+            }
+        }
+    }
+
+    private long emptySlot(long most, long least) {
+        long slot = hash(most, least) & indexMask;
+        while (slotAt(slot) != 0) {
+            slot = (slot + 1) & indexMask;
+        }
+        return slot;
+    }
+
+    /**
+     * Removes the record in a slot, freeing its block and its slot.
+     * @param slot The slot to remove.
+     */
+    private void removeSlot(long slot) {
+        free(addressAt(slot));
+        // Shift later entries of the same probe run back so lookups never stop early
+        long hole = slot;
+        for (long next = (hole + 1) & indexMask; slotAt(next) != 0; next = (next + 1) & indexMask) {
+            long address = addressAt(next);
+            ByteBuffer buffer = segment(address);
+            int offset = offset(address);
+            long home = hash(buffer.getLong(offset + MOST_BITS), buffer.getLong(offset + LEAST_BITS)) & indexMask;
+            if (((next - home) & indexMask) >= ((next - hole) & indexMask)) {
+                setSlot(hole, slotAt(next));
+                hole = next;
+            }
+        }
+        setSlot(hole, 0);
+        size--;
+        modCount++;
+    }
+
+    private void rehash(long slots) {
+        ByteBuffer[] oldIndex = index;
+        long oldMask = indexMask;
+        allocateIndex(slots);
+        for (long slot = 0; slot <= oldMask; slot++) {
+            long entry = oldIndex[(int) (slot >>> INDEX_BUFFER_BITS)].getLong((int) (slot & INDEX_BUFFER_MASK) * Long.BYTES);
+            if (entry != 0) {
+                long address = (entry & ADDRESS_MASK) - 1;
+                ByteBuffer buffer = segment(address);
+                int offset = offset(address);
+                setSlot(emptySlot(buffer.getLong(offset + MOST_BITS), buffer.getLong(offset + LEAST_BITS)), entry);
+            }
+        }
+    }
+
+    private void allocateIndex(long slots) {
+        long perBuffer = Math.min(slots, 1L << INDEX_BUFFER_BITS);
+        index = new ByteBuffer[(int) (slots / perBuffer)];
+        for (int i = 0; i < index.length; i++) {
+            index[i] = ByteBuffer.allocateDirect((int) perBuffer * Long.BYTES).order(ByteOrder.nativeOrder());
+        }
+        indexMask = slots - 1;
+    }
+
+    private long slotAt(long slot) {
+        return index[(int) (slot >>> INDEX_BUFFER_BITS)].getLong((int) (slot & INDEX_BUFFER_MASK) * Long.BYTES);
+    }
+
+    private void setSlot(long slot, long entry) {
+        index[(int) (slot >>> INDEX_BUFFER_BITS)].putLong((int) (slot & INDEX_BUFFER_MASK) * Long.BYTES, entry);
+    }
+
+    private long addressAt(long slot) {
+        return (slotAt(slot) & ADDRESS_MASK) - 1;
+    }
+}
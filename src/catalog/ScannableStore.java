@@ -0,0 +1,41 @@
+package catalog;
+
+import java.util.Iterator;
+import java.util.Map;
+
+/**
+ * An item map that stores items in its own encoded form and can scan them by category,
+ * so a catalog's category index only needs to count the items of each category.
+ */
+interface ScannableStore<T> extends Map<ItemId, LibraryItem<T>> {
+    // Dictionary code stored for a null value
+    int NULL_CODE = -1;
+
+    /**
+     * Grows the store so it can hold the expected number of items without growing again.
+     * @param expectedSize The number of items the store is expected to hold.
+     */
+    void ensureCapacity(int expectedSize);
+
+    /**
+     * Gets the dictionary code of a category, assigning one if the category is new.
+     * @param category The category to encode.
+     * @return The code, or NULL_CODE for null.
+     */
+    int encodeCategory(T category);
+
+    /**
+     * Tests whether an item is in a category without materializing it.
+     * @param key The ID of the item.
+     * @param code The category code.
+     * @return true if the item is present and in the category, false otherwise.
+     */
+    boolean hasCategory(Object key, int code);
+
+    /**
+     * Iterates over the items with a category code, materializing only the matching items.
+     * @param code The category code.
+     * @return An iterator over the items in the category.
+     */
+    Iterator<LibraryItem<T>> itemsWithCategory(int code);
+}
@@ -0,0 +1,310 @@
+package catalog;
+
+import java.util.*;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * A full-text inverted index over the titles and authors of a catalog's items.
+ *
+ * Titles and authors are split into lowercase terms of letters and digits. Each item gets an int ordinal,
+ * and each term maps to a posting list: the sorted ordinals of the items containing it. Ordinals only grow,
+ * so adding an item appends to its posting lists. Removing an item only marks its ordinal as free; once
+ * half the ordinals are free the index is renumbered and the dead entries are dropped.
+ *
+ * Queries are answered from the posting lists without looking at any other items. Multi-term queries
+ * intersect the lists, smallest first. The index is safe to use from several threads.
+ */
+public class SearchIndex<T> implements CatalogListener<T> {
+    // Sorted term dictionary, so prefix queries are a range scan
+    private final NavigableMap<String, PostingList> terms = new TreeMap<>();
+    // Items by ordinal; null for removed items
+    private final List<LibraryItem<T>> items = new ArrayList<>();
+    // Ordinal of each indexed item
+    private final ItemIdMap<Integer> ordinals = new ItemIdMap<>();
+    // Queries share the read lock, updates take the write lock
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Indexes the items already in a catalog and then keeps the index up to date with its changes.
+     * @param catalog The catalog to index.
+     */
+    public void attach(Catalog<T> catalog) {
+        itemsAdded(catalog.getItems());
+        catalog.addListener(this);
+    }
+
+    @Override
+    public void itemAdded(LibraryItem<T> item) {
+        lock.writeLock().lock();
+        try {
+            index(item);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void itemsAdded(Collection<LibraryItem<T>> added) {
+        lock.writeLock().lock();
+        try {
+            for (LibraryItem<T> item : added) {
+                index(item);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    @Override
+    public void itemRemoved(LibraryItem<T> item) {
+        lock.writeLock().lock();
+        try {
+            unindex(item.getId());
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Finds the items whose title or author contains a term.
+     * @param term The term to look for; case is ignored.
+     * @return The matching items, in the order they were indexed.
+     */
+    public List<LibraryItem<T>> searchTerm(String term) {
+        return search(term);
+    }
+
+    /**
+     * Finds the items whose title or author contains a term starting with a prefix.
+     * @param prefix The prefix to look for; case is ignored.
+     * @return The matching items, in the order they were indexed.
+     */
+    public List<LibraryItem<T>> searchPrefix(String prefix) {
+        return search(prefix + "*");
+    }
+
+    /**
+     * Finds the items that match every term of a query.
+     * Terms are split the same way as titles and authors; a term ending with '*' matches as a prefix.
+     * @param query The query, such as "tolkien ring*".
+     * @return The matching items, in the order they were indexed, or an empty list if the query has no terms.
+     */
+    public List<LibraryItem<T>> search(String query) {
+        lock.readLock().lock();
+        try {
+            List<PostingList> lists = new ArrayList<>();
+            for (String token : query.split("\\s+")) {
+                List<String> tokenTerms = new ArrayList<>(tokenize(token));
+                for (int i = 0; i < tokenTerms.size(); i++) {
+                    // Only the last term of a token ending with '*' is a prefix, e.g. "sci-fi*"
+                    boolean prefix = token.endsWith("*") && i == tokenTerms.size() - 1;
+                    lists.add(prefix ? prefixPostings(tokenTerms.get(i)) : postings(tokenTerms.get(i)));
+                }
+            }
+            if (lists.isEmpty()) {
+                return Collections.emptyList();
+            }
+            lists.sort(Comparator.comparingInt(list -> list.size));
+            PostingList matches = lists.get(0);
+            for (int i = 1; i < lists.size() && matches.size > 0; i++) {
+                matches = intersect(matches, lists.get(i));
+            }
+            List<LibraryItem<T>> result = new ArrayList<>(matches.size);
+            for (int i = 0; i < matches.size; i++) {
+                LibraryItem<T> item = items.get(matches.ordinals[i]);
+                if (item != null) {
+                    result.add(item);
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Gets the number of distinct terms in the index.
+     * @return The number of terms.
+     */
+    public int termCount() {
+        lock.readLock().lock();
+        try {
+            return terms.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds an item to the posting lists of its terms, replacing any item already indexed with the same ID.
+     * @param item The item to index.
+     */
+    private void index(LibraryItem<T> item) {
+        if (ordinals.containsKey(item.getId())) {
+            unindex(item.getId());
+        }
+        int ordinal = items.size();
+        items.add(item);
+        ordinals.put(item.getId(), ordinal);
+        addPostings(item, ordinal);
+    }
+
+    /**
+     * Adds an ordinal to the posting lists of an item's terms.
+     * @param item The item whose terms are indexed.
+     * @param ordinal The item's ordinal, greater than every ordinal already indexed.
+     */
+    private void addPostings(LibraryItem<T> item, int ordinal) {
+        for (String term : tokenize(item.getTitle() + " " + item.getAuthor())) {
+            terms.computeIfAbsent(term, key -> new PostingList()).append(ordinal);
+        }
+    }
+
+    /**
+     * Frees the ordinal of an item, renumbering the index once half the ordinals are free.
+     * @param id The ID of the item to remove.
+     */
+    private void unindex(ItemId id) {
+        Integer ordinal = ordinals.remove(id);
+        if (ordinal == null) {
+            return;
+        }
+        items.set(ordinal, null);
+        if (ordinals.size() < items.size() / 2) {
+            renumber();
+        }
+    }
+
+    /**
+     * Rebuilds the posting lists with dense ordinals, dropping removed items and unused terms.
+     */
+    private void renumber() {
+        List<LibraryItem<T>> live = new ArrayList<>(ordinals.size());
+        for (LibraryItem<T> item : items) {
+            if (item != null) {
+                live.add(item);
+            }
+        }
+        items.clear();
+        ordinals.clear();
+        terms.clear();
+        for (LibraryItem<T> item : live) {
+            index(item);
+        }
+    }
+
+    /**
+     * Gets the posting list of a term.
+     * @param term The lowercase term.
+     * @return The sorted ordinals of the items containing the term.
+     */
+    private PostingList postings(String term) {
+        PostingList list = terms.get(term);
+        return list == null ? new PostingList(0) : list;
+    }
+
+    /**
+     * Merges the posting lists of every term starting with a prefix.
+     * @param prefix The lowercase prefix.
+     * @return The sorted, distinct ordinals of the items containing a matching term.
+     */
+    private PostingList prefixPostings(String prefix) {
+        Collection<PostingList> lists = terms.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values();
+        if (lists.size() <= 1) {
+            return lists.isEmpty() ? new PostingList(0) : lists.iterator().next();
+        }
+        // A bitmap over the ordinal range merges any number of lists in linear time
+        BitSet merged = new BitSet(items.size());
+        for (PostingList list : lists) {
+            for (int i = 0; i < list.size; i++) {
+                merged.set(list.ordinals[i]);
+            }
+        }
+        int[] ordinals = merged.stream().toArray();
+        return new PostingList(ordinals, ordinals.length);
+    }
+
+    /**
+     * Intersects two posting lists, galloping through the longer one.
+     * @param smaller The shorter list.
+     * @param larger The longer list.
+     * @return The sorted ordinals present in both lists.
+     */
+    private static PostingList intersect(PostingList smaller, PostingList larger) {
+        int[] result = new int[smaller.size];
+        int count = 0;
+        int from = 0;
+        int[] candidates = larger.ordinals;
+        for (int i = 0; i < smaller.size && from < larger.size; i++) {
+            int ordinal = smaller.ordinals[i];
+            // Gallop to bracket the ordinal, then binary search within the bracket
+            int step = 1;
+            int high = from;
+            while (high < larger.size && candidates[high] < ordinal) {
+                from = high + 1;
+                high += step;
+                step <<= 1;
+            }
+            int found = Arrays.binarySearch(candidates, from, Math.min(high + 1, larger.size), ordinal);
+            if (found >= 0) {
+                result[count++] = ordinal;
+                from = found + 1;
+            } else {
+                from = -found - 1;
+            }
+        }
+        return new PostingList(result, count);
+    }
+
+    /**
+     * Splits text into lowercase terms made of letters and digits.
+     * @param text The text to split.
+     * @return The distinct terms, in order of first appearance.
+     */
+    static Set<String> tokenize(String text) {
+        Set<String> tokens = new LinkedHashSet<>();
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean wordChar = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (wordChar && start < 0) {
+                start = i;
+            } else if (!wordChar && start >= 0) {
+                tokens.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return tokens;
+    }
+
+    /**
+     * A growable, sorted array of item ordinals.
+     */
+    private static class PostingList {
+        private int[] ordinals;
+        private int size;
+
+        PostingList() {
+            this(new int[4], 0);
+        }
+
+        PostingList(int size) {
+            this(new int[size], size);
+        }
+
+        PostingList(int[] ordinals, int size) {
+            this.ordinals = ordinals;
+            this.size = size;
+        }
+
+        /**
+         * Appends an ordinal larger than every ordinal already in the list.
+         * @param ordinal The ordinal to append.
+         */
+        void append(int ordinal) {
+            if (size == ordinals.length) {
+                ordinals = Arrays.copyOf(ordinals, size * 2);
+            }
+            ordinals[size++] = ordinal;
+        }
+    }
+}
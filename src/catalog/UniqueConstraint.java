@@ -0,0 +1,135 @@
+package catalog;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+import validators.AttributeAccessor;
+
+/**
+ * A uniqueness constraint on one attribute of a catalog's items, backed by a hash index of the attribute's values.
+ *
+ * The index counts how many items hold each value and is kept up to date as a catalog listener, so checking
+ * a value is a single hash lookup instead of a scan over every item. Counting rather than just recording the
+ * values keeps the index correct when a catalog already holds duplicates, or when an item is replaced.
+ * Items whose attribute is null are not indexed. The constraint is safe to use from several threads.
+ */
+public class UniqueConstraint<T, K> implements CatalogListener<T> {
+    // Extracts the constrained attribute from an item
+    private final Function<? super LibraryItem<T>, ? extends K> extractor;
+    // Number of items holding each value
+    private final Map<K, Integer> counts = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a constraint on the attribute returned by an extractor.
+     * @param extractor A function to extract the constrained attribute, e.g. LibraryItem::getTitle.
+     */
+    public UniqueConstraint(Function<? super LibraryItem<T>, ? extends K> extractor) {
+        this.extractor = extractor;
+    }
+
+    /**
+     * Creates a constraint on a named attribute of LibraryItem, resolved once to a MethodHandle.
+     * @param attribute The attribute name, e.g. "title" or "author".
+     * @return The constraint.
+     * @throws IllegalArgumentException if LibraryItem has no such public attribute.
+     */
+    public static <T> UniqueConstraint<T, Object> onAttribute(String attribute) {
+        Function<LibraryItem<?>, Object> accessor = AttributeAccessor.of(LibraryItem.class, attribute)::apply;
+        return new UniqueConstraint<>(accessor);
+    }
+
+    /**
+     * Indexes the items already in a catalog and then keeps the index up to date with its changes.
+     * @param catalog The catalog to constrain.
+     */
+    public void attach(Catalog<T> catalog) {
+        itemsAdded(catalog.getItems());
+        catalog.addListener(this);
+    }
+
+    @Override
+    public void itemAdded(LibraryItem<T> item) {
+        K value = extractor.apply(item);
+        if (value != null) {
+            counts.merge(value, 1, Integer::sum);
+        }
+    }
+
+    @Override
+    public void itemRemoved(LibraryItem<T> item) {
+        K value = extractor.apply(item);
+        if (value != null) {
+            counts.computeIfPresent(value, (key, count) -> count == 1 ? null : count - 1);
+        }
+    }
+
+    /**
+     * Checks whether no item holds a value.
+     * @param value The value to check.
+     * @return true if the value is unique, false otherwise.
+     */
+    public boolean isUnique(K value) {
+        return value == null || !counts.containsKey(value);
+    }
+
+    /**
+     * Checks whether an item could be added without breaking the constraint.
+     * @param item The item to check.
+     * @return true if no item in the catalog holds the item's value, false otherwise.
+     */
+    public boolean allows(LibraryItem<T> item) {
+        return isUnique(extractor.apply(item));
+    }
+
+    /**
+     * Finds which of a batch of values are not unique, at one hash lookup per value.
+     * A value is not unique if an item already holds it or it appears more than once in the batch.
+     * @param values The values to check.
+     * @return The values that are not unique.
+     */
+    public Set<K> findNonUnique(Collection<? extends K> values) {
+        Set<K> seen = new HashSet<>(Math.max(16, (int) (values.size() / 0.75f) + 1));
+        Set<K> nonUnique = new HashSet<>();
+        for (K value : values) {
+            if (value != null && (counts.containsKey(value) || !seen.add(value))) {
+                nonUnique.add(value);
+            }
+        }
+        return nonUnique;
+    }
+
+    /**
+     * Finds which of a batch of items could not be added without breaking the constraint.
+     * @param items The items to check.
+     * @return The items whose value is already held, or held by an earlier item in the batch.
+     */
+    public List<LibraryItem<T>> findViolations(Collection<LibraryItem<T>> items) {
+        Set<K> seen = new HashSet<>(Math.max(16, (int) (items.size() / 0.75f) + 1));
+        List<LibraryItem<T>> violations = new ArrayList<>();
+        for (LibraryItem<T> item : items) {
+            K value = extractor.apply(item);
+            if (value != null && (counts.containsKey(value) || !seen.add(value))) {
+                violations.add(item);
+            }
+        }
+        return violations;
+    }
+
+    /**
+     * Returns how many items hold a value.
+     * @param value The value to count.
+     * @return The number of items holding the value.
+     */
+    public int count(K value) {
+        return value == null ? 0 : counts.getOrDefault(value, 0);
+    }
+
+    /**
+     * Returns the number of distinct values held by the catalog's items.
+     * @return The number of distinct values.
+     */
+    public int distinctValues() {
+        return counts.size();
+    }
+}
@@ -0,0 +1,99 @@
+package validators;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+/**
+ * Reads named attributes from objects through MethodHandles that are resolved once per class and attribute.
+ * An attribute is a public field, or a public getter named getX, isX or x (as on records).
+ */
+public final class AttributeAccessor {
+    // Resolved accessors per class, keyed by attribute name
+    private static final ClassValue<Map<String, MethodHandle>> ACCESSORS = new ClassValue<>() {
+        @Override
+        protected Map<String, MethodHandle> computeValue(Class<?> type) {
+            return new ConcurrentHashMap<>();
+        }
+    };
+    // Type every accessor is adapted to
+    private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+    private AttributeAccessor() {
+    }
+
+    /**
+     * Reads an attribute of an object.
+     * @param target The object to read from.
+     * @param attribute The attribute name.
+     * @return The attribute value.
+     * @throws IllegalArgumentException if the object's class has no such public attribute.
+     */
+    public static Object get(Object target, String attribute) {
+        return invoke(resolve(target.getClass(), attribute), target);
+    }
+
+    /**
+     * Creates a function reading an attribute, resolving the accessor up front.
+     * @param type The class the attribute is declared on.
+     * @param attribute The attribute name.
+     * @return A function reading the attribute from instances of the class.
+     * @throws IllegalArgumentException if the class has no such public attribute.
+     */
+    public static <T> Function<T, Object> of(Class<T> type, String attribute) {
+        MethodHandle accessor = resolve(type, attribute);
+        return target -> invoke(accessor, target);
+    }
+
+    /**
+     * Finds the cached accessor of an attribute, resolving it on first use.
+     * @param type The class to read from.
+     * @param attribute The attribute name.
+     * @return An accessor of type (Object)Object.
+     * @throws IllegalArgumentException if the class has no such public attribute.
+     */
+    private static MethodHandle resolve(Class<?> type, String attribute) {
+        return ACCESSORS.get(type).computeIfAbsent(attribute, name -> lookup(type, name));
+    }
+
+    private static MethodHandle lookup(Class<?> type, String name) {
+        MethodHandles.Lookup lookup = MethodHandles.publicLookup();
+        try {
+            for (Field field : type.getFields()) {
+                if (field.getName().equals(name) && !Modifier.isStatic(field.getModifiers())) {
+                    return lookup.unreflectGetter(field).asType(GETTER_TYPE);
+                }
+            }
+            String capitalized = name.isEmpty() ? name : Character.toUpperCase(name.charAt(0)) + name.substring(1);
+            for (String methodName : new String[] {"get" + capitalized, "is" + capitalized, name}) {
+                try {
+                    Method method = type.getMethod(methodName);
+                    if (!Modifier.isStatic(method.getModifiers()) && method.getReturnType() != void.class) {
+                        return lookup.unreflect(method).asType(GETTER_TYPE);
+                    }
+                } catch (NoSuchMethodException ignore) {
+                    // Try the next naming convention
+                }
+            }
+        } catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Attribute " + name + " of " + type.getName() + " is not accessible.", e);
+        }
+        throw new IllegalArgumentException(type.getName() + " has no public attribute " + name + ".");
+    }
+
+    private static Object invoke(MethodHandle accessor, Object target) {
+        try {
+            return accessor.invokeExact(target);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package validators;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+/**
+ * Checks which character classes an input contains in a single pass, without regular expressions or allocation.
+ *
+ * The classes match the patterns InputValidator used: letters are [a-zA-Z], digits are [0-9] and special
+ * characters are anything else that is not whitespace. A validator is built once from the classes an input
+ * must and must not contain, and reports failures as error bits rather than printing them, so it can be
+ * shared freely between threads and used on bulk input.
+ */
+public final class CharacterClassValidator implements Predicate<CharSequence> {
+    // Character classes
+    public static final int LETTERS = 1;
+    public static final int DIGITS = 1 << 1;
+    public static final int SPECIAL = 1 << 2;
+    // Error bits returned by validate
+    public static final int MISSING_LETTERS = LETTERS;
+    public static final int MISSING_DIGITS = DIGITS;
+    public static final int MISSING_SPECIAL = SPECIAL;
+    public static final int UNEXPECTED_LETTERS = LETTERS << 3;
+    public static final int UNEXPECTED_DIGITS = DIGITS << 3;
+    public static final int UNEXPECTED_SPECIAL = SPECIAL << 3;
+    // All character classes
+    private static final int ALL_CLASSES = LETTERS | DIGITS | SPECIAL;
+
+    // Class of each ASCII character; 0 for whitespace
+    private static final byte[] ASCII_CLASSES = new byte[128];
+
+    static {
+        for (char c = 0; c < 128; c++) {
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+                ASCII_CLASSES[c] = LETTERS;
+            } else if (c >= '0' && c <= '9') {
+                ASCII_CLASSES[c] = DIGITS;
+            } else if (c == ' ' || c == '\t' || c == '\n' || c == 0x0B || c == '\f' || c == '\r') {
+                ASCII_CLASSES[c] = 0;
+            } else {
+                ASCII_CLASSES[c] = SPECIAL;
+            }
+        }
+    }
+
+    // Classes the input must contain, and classes it must not contain
+    private final int required;
+    private final int forbidden;
+    // Classes the scan has to look for before it can stop early
+    private final int interesting;
+
+    private CharacterClassValidator(int required, int forbidden) {
+        this.required = required;
+        this.forbidden = forbidden;
+        this.interesting = required | forbidden;
+    }
+
+    /**
+     * Creates a validator.
+     * @param required The classes the input must contain, e.g. LETTERS | DIGITS.
+     * @param forbidden The classes the input must not contain.
+     * @return The validator.
+     * @throws IllegalArgumentException if a class is both required and forbidden, or an unknown class is given.
+     */
+    public static CharacterClassValidator of(int required, int forbidden) {
+        if ((required & forbidden) != 0) {
+            throw new IllegalArgumentException("A character class cannot be both required and forbidden.");
+        }
+        if (((required | forbidden) & ~ALL_CLASSES) != 0) {
+            throw new IllegalArgumentException("Unknown character class.");
+        }
+        return new CharacterClassValidator(required, forbidden);
+    }
+
+    /**
+     * Finds the character classes present in an input, stopping as soon as all the wanted classes have been seen.
+     * @param input The input to scan.
+     * @param wanted The classes of interest.
+     * @return The wanted classes that are present.
+     */
+    public static int classesOf(CharSequence input, int wanted) {
+        int found = 0;
+        for (int i = 0, length = input.length(); i < length && found != wanted; i++) {
+            char c = input.charAt(i);
+            found |= (c < 128 ? ASCII_CLASSES[c] : SPECIAL) & wanted;
+        }
+        return found;
+    }
+
+    /**
+     * Validates an input.
+     * @param input The input to validate.
+     * @return 0 if the input is valid, otherwise a combination of the MISSING_ and UNEXPECTED_ error bits.
+     */
+    public int validate(CharSequence input) {
+        int found = classesOf(input, interesting);
+        return (required & ~found) | ((forbidden & found) << 3);
+    }
+
+    /**
+     * Checks whether an input is valid.
+     * @param input The input to check.
+     * @return true if the input is valid, false otherwise.
+     */
+    @Override
+    public boolean test(CharSequence input) {
+        return validate(input) == 0;
+    }
+
+    /**
+     * Describes the errors returned by validate.
+     * @param errors The error bits.
+     * @return One message per error, in the wording InputValidator uses.
+     */
+    public static List<String> messages(int errors) {
+        List<String> messages = new ArrayList<>(Integer.bitCount(errors));
+        if ((errors & MISSING_LETTERS) != 0) {
+            messages.add("Input must contain alphabetical characters.");
+        }
+        if ((errors & UNEXPECTED_LETTERS) != 0) {
+            messages.add("Input must not contain alphabetical characters.");
+        }
+        if ((errors & MISSING_SPECIAL) != 0) {
+            messages.add("Input must contain special characters.");
+        }
+        if ((errors & UNEXPECTED_SPECIAL) != 0) {
+            messages.add("Input must not contain special characters.");
+        }
+        if ((errors & MISSING_DIGITS) != 0) {
+            messages.add("Input must contain numbers.");
+        }
+        if ((errors & UNEXPECTED_DIGITS) != 0) {
+            messages.add("Input must not contain numbers.");
+        }
+        return messages;
+    }
+}
@@ -0,0 +1,255 @@
+package validators;
+
+import java.text.ParsePosition;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.Month;
+import java.time.Year;
+import java.time.format.DateTimeFormatter;
+import java.time.format.ResolverStyle;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Parses dates from one source, such as an import file, learning which of its formats the source uses.
+ *
+ * YYYY-MM-DD input is parsed straight from its digits when ISO_LOCAL_DATE is one of the formats, with no
+ * formatter and, for dates seen before, no allocation. Other input is tried against the remaining formats
+ * in order of how often each has matched so far, so a source that always uses one format pays for one
+ * attempt per date. Failures are detected without throwing DateTimeParseException.
+ *
+ * Parsed dates are interned in a small cache shared by all parsers, since the same release dates repeat
+ * heavily across a catalog. A parser is safe to use from several threads.
+ */
+public final class DateParser {
+    // Formats commonly found in hand-maintained catalog files, for sources whose format is not known up front.
+    // A date such as 03/04/2001 reads differently day first and month first, so each set has only one slash order,
+    // and every pattern resolves strictly so an impossible date such as 31/02/2001 is rejected, not adjusted.
+    public static final DateTimeFormatter[] DAY_FIRST_FORMATS = commonFormats("dd/MM/uuuu");
+    public static final DateTimeFormatter[] MONTH_FIRST_FORMATS = commonFormats("MM/dd/uuuu");
+
+    // Interned dates, direct-mapped by year, month and day into 2^CACHE_BITS slots
+    private static final int CACHE_BITS = 13;
+    private static final LocalDate[] CACHE = new LocalDate[1 << CACHE_BITS];
+
+    // true if ISO_LOCAL_DATE is one of the formats, enabling the fast path
+    private final boolean iso;
+    // Formats other than ISO_LOCAL_DATE, most frequently matched first; replaced as a whole when reordered
+    private volatile Format[] formats;
+
+    /**
+     * A format and the number of dates it has matched.
+     */
+    private static final class Format {
+        private final DateTimeFormatter formatter;
+        private final AtomicLong hits = new AtomicLong();
+
+        private Format(DateTimeFormatter formatter) {
+            this.formatter = formatter;
+        }
+    }
+
+    /**
+     * Creates a parser for dates in the format YYYY-MM-DD.
+     */
+    public DateParser() {
+        this(DateTimeFormatter.ISO_LOCAL_DATE);
+    }
+
+    /**
+     * Creates a parser accepting dates in any of the given formats.
+     * @param formatters The accepted formats, in the order to try them before any have matched.
+     * @throws IllegalArgumentException if no formats are given.
+     */
+    public DateParser(DateTimeFormatter... formatters) {
+        if (formatters.length == 0) {
+            throw new IllegalArgumentException("At least one date format is required.");
+        }
+        boolean hasIso = false;
+        Format[] others = new Format[formatters.length];
+        int count = 0;
+        for (DateTimeFormatter formatter : formatters) {
+            if (formatter == DateTimeFormatter.ISO_LOCAL_DATE) {
+                hasIso = true;
+            } else {
+                others[count++] = new Format(formatter);
+            }
+        }
+        this.iso = hasIso;
+        this.formats = Arrays.copyOf(others, count);
+    }
+
+    /**
+     * Builds the common formats around one slash-separated pattern.
+     * @param slashPattern The day-first or month-first pattern.
+     * @return The formats, ISO_LOCAL_DATE first.
+     */
+    private static DateTimeFormatter[] commonFormats(String slashPattern) {
+        return new DateTimeFormatter[] {
+                DateTimeFormatter.ISO_LOCAL_DATE,
+                strict("uuuu/MM/dd"),
+                strict(slashPattern),
+                strict("d MMM uuuu"),
+                strict("MMM d, uuuu"),
+                DateTimeFormatter.BASIC_ISO_DATE
+        };
+    }
+
+    private static DateTimeFormatter strict(String pattern) {
+        return DateTimeFormatter.ofPattern(pattern, Locale.ENGLISH).withResolverStyle(ResolverStyle.STRICT);
+    }
+
+    /**
+     * Parses a date.
+     * @param text The date input.
+     * @return The parsed, interned LocalDate, or null if the input is not a valid date in any of the formats.
+     */
+    public LocalDate parse(CharSequence text) {
+        if (text == null) {
+            return null;
+        }
+        boolean isoShape = iso && isIsoDateShape(text);
+        if (isoShape) {
+            LocalDate date = parseIsoDate(text);
+            if (date != null) {
+                return date;
+            }
+        }
+        Format[] current = formats;
+        for (int i = 0; i < current.length; i++) {
+            LocalDate date = tryParse(text, current[i].formatter);
+            if (date != null) {
+                long hits = current[i].hits.incrementAndGet();
+                if (i > 0 && hits > current[i - 1].hits.get()) {
+                    promote(current[i]);
+                }
+                return intern(date);
+            }
+        }
+        if (iso && !isoShape) {
+            // ISO_LOCAL_DATE also accepts signed and five-digit years, which the fast path leaves out
+            LocalDate date = tryParse(text, DateTimeFormatter.ISO_LOCAL_DATE);
+            return date == null ? null : intern(date);
+        }
+        return null;
+    }
+
+    /**
+     * Moves a format one place ahead of the next most frequently matched one.
+     * @param format The format that has overtaken its predecessor.
+     */
+    private synchronized void promote(Format format) {
+        Format[] reordered = formats.clone();
+        for (int i = 1; i < reordered.length; i++) {
+            if (reordered[i] == format) {
+                reordered[i] = reordered[i - 1];
+                reordered[i - 1] = format;
+                formats = reordered;
+                return;
+            }
+        }
+    }
+
+    /**
+     * Gets the fallback formats in the order they are currently tried.
+     * @return The formats other than ISO_LOCAL_DATE, most frequently matched first.
+     */
+    public DateTimeFormatter[] getFallbackOrder() {
+        Format[] current = formats;
+        DateTimeFormatter[] order = new DateTimeFormatter[current.length];
+        for (int i = 0; i < current.length; i++) {
+            order[i] = current[i].formatter;
+        }
+        return order;
+    }
+
+    /**
+     * Parses a date with a formatter without throwing on bad input.
+     * @param text The date input.
+     * @param formatter The format to parse.
+     * @return The parsed LocalDate, or null if the input is not a valid date in the format.
+     */
+    static LocalDate tryParse(CharSequence text, DateTimeFormatter formatter) {
+        ParsePosition position = new ParsePosition(0);
+        if (formatter.parseUnresolved(text, position) == null || position.getIndex() != text.length()) {
+            return null;
+        }
+        try {
+            // The text is well formed, so this can only fail on an impossible date such as February 30,
+            // provided the formatter resolves strictly; a SMART formatter adjusts it to the end of the month instead
+            return LocalDate.parse(text, formatter);
+        } catch (DateTimeException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Checks whether input has the shape YYYY-MM-DD.
+     * @param text The input to check.
+     * @return true if the input is four digits, a dash, two digits, a dash and two digits.
+     */
+    static boolean isIsoDateShape(CharSequence text) {
+        if (text.length() != 10 || text.charAt(4) != '-' || text.charAt(7) != '-') {
+            return false;
+        }
+        for (int i = 0; i < 10; i++) {
+            char c = text.charAt(i);
+            if (i != 4 && i != 7 && (c < '0' || c > '9')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parses input of the shape YYYY-MM-DD from its digits, returning the interned date.
+     * @param text The input to parse.
+     * @return The parsed LocalDate, or null if the month or day is out of range.
+     */
+    static LocalDate parseIsoDate(CharSequence text) {
+        int year = digits(text, 0, 4);
+        int month = digits(text, 5, 7);
+        int day = digits(text, 8, 10);
+        if (month < 1 || month > 12 || day < 1 || day > Month.of(month).length(Year.isLeap(year))) {
+            return null;
+        }
+        int slot = slot(year, month, day);
+        LocalDate cached = CACHE[slot];
+        if (cached != null && cached.getDayOfMonth() == day && cached.getMonthValue() == month && cached.getYear() == year) {
+            return cached;
+        }
+        LocalDate date = LocalDate.of(year, month, day);
+        CACHE[slot] = date;
+        return date;
+    }
+
+    /**
+     * Returns the cached instance equal to a date, caching the date if there is none.
+     * @param date The date to intern.
+     * @return An equal LocalDate, shared with other parses of the same date.
+     */
+    static LocalDate intern(LocalDate date) {
+        int slot = slot(date.getYear(), date.getMonthValue(), date.getDayOfMonth());
+        LocalDate cached = CACHE[slot];
+        if (date.equals(cached)) {
+            return cached;
+        }
+        // LocalDate is immutable, so publishing it through a plain array write is safe
+        CACHE[slot] = date;
+        return date;
+    }
+
+    private static int slot(int year, int month, int day) {
+        int key = (year << 9) | (month << 5) | day;
+        return (key * 0x9E3779B9) >>> (32 - CACHE_BITS);
+    }
+
+    private static int digits(CharSequence text, int from, int to) {
+        int value = 0;
+        for (int i = from; i < to; i++) {
+            value = value * 10 + (text.charAt(i) - '0');
+        }
+        return value;
+    }
+}
@@ -4,15 +4,23 @@ import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
 import java.time.format.DateTimeParseException;
 import java.util.Collection;
+import java.util.HashSet;
 import java.util.Scanner;
+import java.util.Set;
 import java.util.function.Function;
 import java.util.function.Predicate;
-import java.util.regex.Pattern;
 
 public class InputValidator {
 
     // Formatter for parsing dates in the format YYYY-MM-DD
     private static final DateTimeFormatter DEFAULT_DATE_FORMATTER = DateTimeFormatter.ISO_LOCAL_DATE;
+    // Character class validators, built once and shared by every call
+    private static final CharacterClassValidator REQUIRE_LETTERS = CharacterClassValidator.of(CharacterClassValidator.LETTERS, 0);
+    private static final CharacterClassValidator FORBID_LETTERS = CharacterClassValidator.of(0, CharacterClassValidator.LETTERS);
+    private static final CharacterClassValidator REQUIRE_SPECIAL = CharacterClassValidator.of(CharacterClassValidator.SPECIAL, 0);
+    private static final CharacterClassValidator FORBID_SPECIAL = CharacterClassValidator.of(0, CharacterClassValidator.SPECIAL);
+    private static final CharacterClassValidator REQUIRE_DIGITS = CharacterClassValidator.of(CharacterClassValidator.DIGITS, 0);
+    private static final CharacterClassValidator FORBID_DIGITS = CharacterClassValidator.of(0, CharacterClassValidator.DIGITS);
 
     /**
      * Generic method to get input from user and validate it.
@@ -62,11 +70,34 @@ public class InputValidator {
      * @throws DateTimeParseException if the date format is invalid.
      */
     public static LocalDate validateAndParseDate(String dateInput, DateTimeFormatter formatter) throws DateTimeParseException {
-        LocalDate date = LocalDate.parse(dateInput, formatter);
+        LocalDate date = tryParseDate(dateInput, formatter);
+        if (date == null) {
+            // Parse again the slow way only to build the exception
+            date = LocalDate.parse(dateInput, formatter);
+        }
         // Further checks like past or future may be added here in the future
         return date;
     }
 
+    /**
+     * Parses a date without throwing on bad input.
+     * YYYY-MM-DD input to ISO_LOCAL_DATE is parsed directly from its digits; other input and formats
+     * go through the formatter, but failures are detected without a DateTimeParseException.
+     * To parse many dates from one source in several possible formats, use a DateParser.
+     * @param dateInput The date input string.
+     * @param formatter The DateTimeFormatter to use for parsing.
+     * @return The parsed LocalDate, or null if the input is not a valid date in the format.
+     */
+    public static LocalDate tryParseDate(CharSequence dateInput, DateTimeFormatter formatter) {
+        if (dateInput == null) {
+            return null;
+        }
+        if (formatter == DateTimeFormatter.ISO_LOCAL_DATE && DateParser.isIsoDateShape(dateInput)) {
+            return DateParser.parseIsoDate(dateInput);
+        }
+        return DateParser.tryParse(dateInput, formatter);
+    }
+
     // Generic Validator Methods
 
     /**
@@ -75,19 +106,30 @@ public class InputValidator {
      * @return true if the input is non-null and non-empty, false otherwise.
      */
     public static <T> boolean validateNonNullAndNonEmpty(T input) {
-        if (input == null) {
-            System.out.println("Input must not be null.");
+        String error = checkNonNullAndNonEmpty(input);
+        if (error != null) {
+            System.out.println(error);
             return false;
         }
+        return true;
+    }
+
+    /**
+     * Checks that input is non-null and non-empty without printing.
+     * @param input The input to check.
+     * @return The error message, or null if the input is valid.
+     */
+    static String checkNonNullAndNonEmpty(Object input) {
+        if (input == null) {
+            return "Input must not be null.";
+        }
         if (input instanceof String && ((String) input).trim().isEmpty()) {
-            System.out.println("Input must not be empty.");
-            return false;
+            return "Input must not be empty.";
         }
         if (input instanceof Collection && ((Collection<?>) input).isEmpty()) {
-            System.out.println("Collection must not be empty.");
-            return false;
+            return "Collection must not be empty.";
         }
-        return true;
+        return null;
     }
 
     /**
@@ -101,6 +143,28 @@ public class InputValidator {
         return collection.stream().map(extractor).noneMatch(v -> v.equals(value));
     }
 
+    /**
+     * Finds which of a batch of values are not unique, hashing the collection once for the whole batch.
+     * A value is not unique if it is already in the collection or appears more than once in the batch.
+     * @param values The values to check.
+     * @param collection The collection to check against.
+     * @param extractor A function to extract the value to compare.
+     * @return The values that are not unique.
+     */
+    public static <T, U> Set<U> findNonUnique(Collection<U> values, Collection<T> collection, Function<T, U> extractor) {
+        Set<U> existing = new HashSet<>(Math.max(16, (int) (collection.size() / 0.75f) + 1));
+        for (T element : collection) {
+            existing.add(extractor.apply(element));
+        }
+        Set<U> nonUnique = new HashSet<>();
+        for (U value : values) {
+            if (!existing.add(value)) {
+                nonUnique.add(value);
+            }
+        }
+        return nonUnique;
+    }
+
     /**
      * Validates the presence or absence of alphabetical characters in any input.
      * @param input The input to validate.
@@ -108,16 +172,7 @@ public class InputValidator {
      * @return true if the input meets the specified condition, false otherwise.
      */
     public static <T> boolean includeAlphabets(T input, boolean shouldInclude) {
-        String inputAsString = String.valueOf(input); // Converts any input to its string representation
-        boolean containsLetters = Pattern.compile("[a-zA-Z]").matcher(inputAsString).find();
-        if (shouldInclude && !containsLetters) {
-            System.out.println("Input must contain alphabetical characters.");
-            return false;
-        } else if (!shouldInclude && containsLetters) {
-            System.out.println("Input must not contain alphabetical characters.");
-            return false;
-        }
-        return true;
+        return checkCharacters(input, shouldInclude ? REQUIRE_LETTERS : FORBID_LETTERS);
     }
 
     /**
@@ -127,16 +182,7 @@ public class InputValidator {
      * @return true if the input meets the specified condition, false otherwise.
      */
     public static <T> boolean includeSpecialCharacters(T input, boolean shouldInclude) {
-        String inputAsString = String.valueOf(input); // Converts any input to its string representation
-        boolean containsSpecial = Pattern.compile("[^a-zA-Z0-9\\s]").matcher(inputAsString).find();
-        if (shouldInclude && !containsSpecial) {
-            System.out.println("Input must contain special characters.");
-            return false;
-        } else if (!shouldInclude && containsSpecial) {
-            System.out.println("Input must not contain special characters.");
-            return false;
-        }
-        return true;
+        return checkCharacters(input, shouldInclude ? REQUIRE_SPECIAL : FORBID_SPECIAL);
     }
 
     /**
@@ -146,13 +192,21 @@ public class InputValidator {
      * @return true if the input meets the specified condition, false otherwise.
      */
     public static <T> boolean includeNumbers(T input, boolean shouldInclude) {
-        String inputAsString = String.valueOf(input); // Converts any input to its string representation
-        boolean containsNumbers = Pattern.compile("\\d").matcher(inputAsString).find();
-        if (shouldInclude && !containsNumbers) {
-            System.out.println("Input must contain numbers.");
-            return false;
-        } else if (!shouldInclude && containsNumbers) {
-            System.out.println("Input must not contain numbers.");
+        return checkCharacters(input, shouldInclude ? REQUIRE_DIGITS : FORBID_DIGITS);
+    }
+
+    /**
+     * Checks the character classes of any input with a single scan, printing the error message if it fails.
+     * @param input The input to validate.
+     * @param validator The character class rule to apply.
+     * @return true if the input meets the rule, false otherwise.
+     */
+    private static <T> boolean checkCharacters(T input, CharacterClassValidator validator) {
+        // Converts any other input to its string representation
+        CharSequence text = input instanceof CharSequence ? (CharSequence) input : String.valueOf(input);
+        int errors = validator.validate(text);
+        if (errors != 0) {
+            CharacterClassValidator.messages(errors).forEach(System.out::println);
             return false;
         }
         return true;
@@ -162,20 +216,19 @@ public class InputValidator {
      * Ensures that the input is unique in the given collection.
      * @param input The input to check for uniqueness.
      * @param collection The collection to check against.
-     * @param attribute The attribute of the objects in the collection to compare.
+     * @param attribute The attribute of the objects in the collection to compare: a public field or getter.
      * @return true if the input is unique, false otherwise.
+     * @throws IllegalArgumentException if an object in the collection has no such attribute.
      */
     public static <T> boolean validateUniqueness(String input, Collection<T> collection, String attribute) {
-        return collection.stream()
-                .map(t -> {
-                    try {
-                        return t.getClass().getField(attribute).get(t).toString();
-                    } catch (IllegalAccessException | NoSuchFieldException e) {
-                        e.printStackTrace();
-                        return null;
-                    }
-                })
-                .noneMatch(input::equals);
+        // Accessors are resolved once per class, so each element costs a MethodHandle call rather than a reflective lookup
+        for (T element : collection) {
+            Object value = AttributeAccessor.get(element, attribute);
+            if (value != null && input.equals(value.toString())) {
+                return false;
+            }
+        }
+        return true;
     }
 
     // Data Validation Methods
@@ -215,10 +268,9 @@ public class InputValidator {
             formatters = new DateTimeFormatter[]{DEFAULT_DATE_FORMATTER}; // Use default if none provided
         }
         for (DateTimeFormatter formatter : formatters) {
-            try {
-                return LocalDate.parse(dateInput, formatter);
-            } catch (DateTimeParseException ignore) {
-                // Try the next format - currently we only have 1 format (will add more later as the inputValidator class is improved)
+            LocalDate date = tryParseDate(dateInput, formatter);
+            if (date != null) {
+                return date;
             }
         }
         System.out.println("Invalid date format. Please use a valid format.");
@@ -233,14 +285,29 @@ public class InputValidator {
      * @return true if the date is valid, false otherwise.
      */
     private static boolean validateDateLogic(LocalDate date, boolean mustBePast, boolean mustBeFuture) {
-        if (mustBePast && date.isAfter(LocalDate.now())) {
-            System.out.println("Date must be in the past.");
-            return false;
-        }
-        if (mustBeFuture && date.isBefore(LocalDate.now())) {
-            System.out.println("Date must be in the future.");
+        String error = checkDate(date, mustBePast, mustBeFuture, LocalDate.now());
+        if (error != null) {
+            System.out.println(error);
             return false;
         }
         return true;
     }
+
+    /**
+     * Common date validation logic, without printing.
+     * @param date The LocalDate to check.
+     * @param mustBePast true if the date must be in the past.
+     * @param mustBeFuture true if the date must be in the future.
+     * @param today The current date.
+     * @return The error message, or null if the date is valid.
+     */
+    static String checkDate(LocalDate date, boolean mustBePast, boolean mustBeFuture, LocalDate today) {
+        if (mustBePast && date.isAfter(today)) {
+            return "Date must be in the past.";
+        }
+        if (mustBeFuture && date.isBefore(today)) {
+            return "Date must be in the future.";
+        }
+        return null;
+    }
 }
@@ -0,0 +1,363 @@
+package validators;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * A composable list of validation rules for raw records, such as the fields of an imported row.
+ *
+ * Each method adding a rule returns a new pipeline, so pipelines are immutable and can be shared between
+ * threads. Rules reuse the InputValidator checks, but instead of printing they append their messages to a
+ * per-record error list, and nothing on the validation path throws. A batch of records can be validated
+ * in parallel on a ForkJoinPool; the list of errors for a valid record is never allocated.
+ */
+public final class ValidationPipeline<R> {
+    // Records per fork/join task below which a batch is validated sequentially
+    private static final int SEQUENTIAL_THRESHOLD = 1024;
+    // Error list of a valid record
+    private static final List<String> NO_ERRORS = List.of();
+
+    /**
+     * A single check on a record.
+     */
+    @FunctionalInterface
+    private interface Rule<R> {
+        /**
+         * Checks a record.
+         * @param record The record to check.
+         * @param today The current date, read once per batch.
+         * @param errors The errors found so far, or null if there are none.
+         * @return The errors found so far, including any found by this rule.
+         */
+        List<String> check(R record, LocalDate today, List<String> errors);
+    }
+
+    // The rules, applied in order
+    private final List<Rule<R>> rules;
+
+    private ValidationPipeline(List<Rule<R>> rules) {
+        this.rules = rules;
+    }
+
+    /**
+     * Creates a pipeline with no rules.
+     * @return The empty pipeline.
+     */
+    public static <R> ValidationPipeline<R> create() {
+        return new ValidationPipeline<>(List.of());
+    }
+
+    /**
+     * Adds a rule testing the whole record.
+     * @param test The predicate a valid record must satisfy.
+     * @param errorMessage The error message if the record fails the predicate.
+     * @return A new pipeline with the rule added.
+     */
+    public ValidationPipeline<R> check(Predicate<? super R> test, String errorMessage) {
+        return with((record, today, errors) -> test.test(record) ? errors : add(errors, errorMessage));
+    }
+
+    /**
+     * Adds a rule testing one field of the record.
+     * @param name The field name, used to prefix the error message.
+     * @param field A function to extract the field.
+     * @param test The predicate a valid field must satisfy.
+     * @param errorMessage The error message if the field fails the predicate.
+     * @return A new pipeline with the rule added.
+     */
+    public <F> ValidationPipeline<R> check(String name, Function<? super R, F> field, Predicate<? super F> test, String errorMessage) {
+        String message = name + ": " + errorMessage;
+        return with((record, today, errors) -> test.test(field.apply(record)) ? errors : add(errors, message));
+    }
+
+    /**
+     * Adds a rule requiring a field to be non-null and non-empty.
+     * @param name The field name, used to prefix the error message.
+     * @param field A function to extract the field.
+     * @return A new pipeline with the rule added.
+     */
+    public ValidationPipeline<R> nonEmpty(String name, Function<? super R, ?> field) {
+        return with((record, today, errors) -> {
+            String error = InputValidator.checkNonNullAndNonEmpty(field.apply(record));
+            return error == null ? errors : add(errors, name + ": " + error);
+        });
+    }
+
+    /**
+     * Adds a rule on the character classes of a field. A null field is skipped, leaving it to nonEmpty.
+     * @param name The field name, used to prefix the error messages.
+     * @param field A function to extract the field.
+     * @param validator The character class rule, e.g. CharacterClassValidator.of(LETTERS, DIGITS).
+     * @return A new pipeline with the rule added.
+     */
+    public ValidationPipeline<R> characters(String name, Function<? super R, ? extends CharSequence> field, CharacterClassValidator validator) {
+        return with((record, today, errors) -> {
+            CharSequence value = field.apply(record);
+            int found = value == null ? 0 : validator.validate(value);
+            if (found == 0) {
+                return errors;
+            }
+            for (String message : CharacterClassValidator.messages(found)) {
+                errors = add(errors, name + ": " + message);
+            }
+            return errors;
+        });
+    }
+
+    /**
+     * Adds a rule requiring a field to be a date in a format, optionally in the past or future.
+     * A null or blank field is skipped, leaving it to nonEmpty.
+     * @param name The field name, used to prefix the error message.
+     * @param field A function to extract the field.
+     * @param formatter The DateTimeFormatter to use for parsing.
+     * @param mustBePast true if the date must be in the past.
+     * @param mustBeFuture true if the date must be in the future.
+     * @return A new pipeline with the rule added.
+     */
+    public ValidationPipeline<R> date(String name, Function<? super R, String> field, DateTimeFormatter formatter,
+                                      boolean mustBePast, boolean mustBeFuture) {
+        return with((record, today, errors) -> {
+            String value = field.apply(record);
+            if (value == null || value.isBlank()) {
+                return errors;
+            }
+            LocalDate date = InputValidator.tryParseDate(value.trim(), formatter);
+            if (date == null) {
+                return add(errors, name + ": Invalid date format. Please use a valid format.");
+            }
+            String error = InputValidator.checkDate(date, mustBePast, mustBeFuture, today);
+            return error == null ? errors : add(errors, name + ": " + error);
+        });
+    }
+
+    /**
+     * Validates a single record.
+     * @param record The record to validate.
+     * @return The error messages, empty if the record is valid.
+     */
+    public List<String> validate(R record) {
+        return validate(record, LocalDate.now());
+    }
+
+    private List<String> validate(R record, LocalDate today) {
+        List<String> errors = null;
+        for (Rule<R> rule : rules) {
+            errors = rule.check(record, today, errors);
+        }
+        return errors == null ? NO_ERRORS : errors;
+    }
+
+    /**
+     * Validates a batch of records on the common ForkJoinPool.
+     * @param records The records to validate.
+     * @return The results, in the order of the records.
+     */
+    public Results<R> validateAll(List<? extends R> records) {
+        return validateAll(records, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Validates a batch of records in parallel.
+     * @param records The records to validate.
+     * @param pool The pool to run the validation on.
+     * @return The results, in the order of the records.
+     */
+    public Results<R> validateAll(List<? extends R> records, ForkJoinPool pool) {
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        List<String>[] errors = new List[records.size()];
+        LocalDate today = LocalDate.now();
+        if (records.size() <= SEQUENTIAL_THRESHOLD) {
+            validateRange(records, 0, records.size(), today, errors);
+        } else {
+            // Tasks index the list directly, so lists without fast random access are copied first
+            List<? extends R> indexed = records instanceof RandomAccess ? records : new ArrayList<>(records);
+            pool.invoke(new ValidateTask<>(this, indexed, 0, indexed.size(), today, errors));
+        }
+        return new Results<>(new ArrayList<>(records), errors);
+    }
+
+    /**
+     * Validates an array of records in parallel.
+     * @param records The records to validate.
+     * @param pool The pool to run the validation on.
+     * @return The results, in the order of the records.
+     */
+    public Results<R> validateAll(R[] records, ForkJoinPool pool) {
+        return validateAll(Arrays.asList(records), pool);
+    }
+
+    /**
+     * Validates a stream of records in parallel. The stream is drained before validation starts.
+     * @param records The records to validate.
+     * @param pool The pool to run the validation on.
+     * @return The results, in encounter order.
+     */
+    public Results<R> validateAll(Stream<? extends R> records, ForkJoinPool pool) {
+        return validateAll(records.collect(Collectors.toList()), pool);
+    }
+
+    private void validateRange(List<? extends R> records, int from, int to, LocalDate today, List<String>[] errors) {
+        for (int i = from; i < to; i++) {
+            List<String> found = validate(records.get(i), today);
+            if (!found.isEmpty()) {
+                errors[i] = found;
+            }
+        }
+    }
+
+    private ValidationPipeline<R> with(Rule<R> rule) {
+        List<Rule<R>> extended = new ArrayList<>(rules.size() + 1);
+        extended.addAll(rules);
+        extended.add(rule);
+        return new ValidationPipeline<>(List.copyOf(extended));
+    }
+
+    private static List<String> add(List<String> errors, String message) {
+        if (errors == null) {
+            errors = new ArrayList<>(2);
+        }
+        errors.add(message);
+        return errors;
+    }
+
+    /**
+     * Splits a range of records in half until it is small enough to validate directly.
+     * Every task writes to its own slots of the shared error array, so no synchronization is needed.
+     */
+    private static final class ValidateTask<R> extends RecursiveAction {
+        // Tasks are never serialized, but RecursiveAction is Serializable
+        private static final long serialVersionUID = 1L;
+
+        private final ValidationPipeline<R> pipeline;
+        private final List<? extends R> records;
+        private final int from;
+        private final int to;
+        private final LocalDate today;
+        private final List<String>[] errors;
+
+        private ValidateTask(ValidationPipeline<R> pipeline, List<? extends R> records, int from, int to,
+                             LocalDate today, List<String>[] errors) {
+            this.pipeline = pipeline;
+            this.records = records;
+            this.from = from;
+            this.to = to;
+            this.today = today;
+            this.errors = errors;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= SEQUENTIAL_THRESHOLD) {
+                pipeline.validateRange(records, from, to, today, errors);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ValidateTask<>(pipeline, records, from, middle, today, errors),
+                    new ValidateTask<>(pipeline, records, middle, to, today, errors));
+        }
+    }
+
+    /**
+     * The outcome of validating a batch of records.
+     */
+    public static final class Results<R> {
+        private final List<R> records;
+        // Errors per record; null for valid records
+        private final List<String>[] errors;
+        private final int invalidCount;
+
+        private Results(List<R> records, List<String>[] errors) {
+            this.records = records;
+            this.errors = errors;
+            int invalid = 0;
+            for (List<String> found : errors) {
+                if (found != null) {
+                    invalid++;
+                }
+            }
+            this.invalidCount = invalid;
+        }
+
+        /**
+         * Gets the number of records validated.
+         * @return The number of records.
+         */
+        public int size() {
+            return records.size();
+        }
+
+        /**
+         * Gets the number of records that passed every rule.
+         * @return The number of valid records.
+         */
+        public int getValidCount() {
+            return records.size() - invalidCount;
+        }
+
+        /**
+         * Gets the number of records that failed at least one rule.
+         * @return The number of invalid records.
+         */
+        public int getInvalidCount() {
+            return invalidCount;
+        }
+
+        /**
+         * Checks whether a record passed every rule.
+         * @param index The position of the record in the batch.
+         * @return true if the record is valid, false otherwise.
+         */
+        public boolean isValid(int index) {
+            return errors[index] == null;
+        }
+
+        /**
+         * Gets the errors found in a record.
+         * @param index The position of the record in the batch.
+         * @return The error messages, empty if the record is valid.
+         */
+        public List<String> getErrors(int index) {
+            return errors[index] == null ? NO_ERRORS : Collections.unmodifiableList(errors[index]);
+        }
+
+        /**
+         * Gets the records that passed every rule.
+         * @return The valid records, in batch order.
+         */
+        public List<R> getValid() {
+            List<R> valid = new ArrayList<>(getValidCount());
+            for (int i = 0; i < errors.length; i++) {
+                if (errors[i] == null) {
+                    valid.add(records.get(i));
+                }
+            }
+            return valid;
+        }
+
+        /**
+         * Gets the errors of every invalid record.
+         * @return The error messages keyed by the position of the record in the batch, in batch order.
+         */
+        public SortedMap<Integer, List<String>> getErrors() {
+            SortedMap<Integer, List<String>> invalid = new TreeMap<>();
+            for (int i = 0; i < errors.length; i++) {
+                if (errors[i] != null) {
+                    invalid.put(i, Collections.unmodifiableList(errors[i]));
+                }
+            }
+            return invalid;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Validated %d records: %d valid, %d invalid", size(), getValidCount(), invalidCount);
+        }
+    }
+}